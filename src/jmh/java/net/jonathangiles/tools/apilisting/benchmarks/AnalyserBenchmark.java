@@ -0,0 +1,111 @@
+package net.jonathangiles.tools.apilisting.benchmarks;
+
+import net.jonathangiles.tools.apilisting.analysers.ASTAnalyser;
+import net.jonathangiles.tools.apilisting.analysers.ReflectiveAnalyser;
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many jar files per second each analyser can turn into an in-memory API listing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AnalyserBenchmark {
+
+    /**
+     * The source jar given to the AST analyser.
+     */
+    @State(Scope.Benchmark)
+    public static class Sources {
+        /**
+         * Either the three test fixtures, or a generated jar of 500 classes.
+         */
+        @Param({ "fixtures", "synthetic" })
+        public String sources;
+
+        private File jar;
+        private FileSystem fileSystem;
+        private List<Path> files;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            jar = "synthetic".equals(sources)
+                    ? BenchmarkJars.syntheticSourcesJar(500)
+                    : BenchmarkJars.fixtureSourcesJar();
+            fileSystem = BenchmarkJars.open(jar);
+            files = BenchmarkJars.allFiles(fileSystem);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fileSystem.close();
+        }
+    }
+
+    /**
+     * The class jar given to the reflective analyser, which is always the compiled test fixtures. It is a state of its
+     * own so that the reflective benchmark is not run once for each of the source jars, which it does not read.
+     */
+    @State(Scope.Benchmark)
+    public static class Classes {
+        private File jar;
+        private FileSystem fileSystem;
+        private List<Path> files;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            jar = BenchmarkJars.fixtureClassesJar();
+            fileSystem = BenchmarkJars.open(jar);
+            files = BenchmarkJars.allFiles(fileSystem);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            fileSystem.close();
+        }
+    }
+
+    @Benchmark
+    public APIListing astAnalyser(Sources sources) {
+        final APIListing apiListing = newListing();
+        new ASTAnalyser().analyse(sources.files, sources.jar, apiListing);
+        return apiListing;
+    }
+
+    @Benchmark
+    public APIListing reflectiveAnalyser(Classes classes) {
+        final APIListing apiListing = newListing();
+        new ReflectiveAnalyser().analyse(classes.files, classes.jar, apiListing);
+        return apiListing;
+    }
+
+    private static APIListing newListing() {
+        final APIListing apiListing = new APIListing();
+        apiListing.setName("benchmark");
+        apiListing.setTokens(new TokenBuffer());
+        return apiListing;
+    }
+}
@@ -0,0 +1,156 @@
+package net.jonathangiles.tools.apilisting.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the jar files that the benchmarks analyse. The fixtures are read from the classpath, and the synthetic jar is
+ * generated so that its size can be scaled well beyond the fixtures.
+ */
+final class BenchmarkJars {
+    private static final String FIXTURE_PACKAGE = "net/jonathangiles/tools/apilisting/tests/";
+
+    private static final String[] FIXTURE_SOURCES = { "Test1.java", "Test2.java", "BlobAsyncClient.java" };
+    private static final String[] FIXTURE_CLASSES = { "Test1.class", "Test2.class", "Test2$InnerClass.class" };
+
+    private BenchmarkJars() {
+        // no-op
+    }
+
+    /**
+     * A jar of the source files under src/main/resources/net/jonathangiles/tools/apilisting/tests.
+     */
+    static File fixtureSourcesJar() throws IOException {
+        return copyFromClasspath("fixture-sources", FIXTURE_SOURCES);
+    }
+
+    /**
+     * A jar of the compiled test classes under src/main/java/net/jonathangiles/tools/apilisting/tests.
+     */
+    static File fixtureClassesJar() throws IOException {
+        return copyFromClasspath("fixture-classes", FIXTURE_CLASSES);
+    }
+
+    /**
+     * A jar of generated source files, spread over ten packages, each of which declares fields, constructors, generic
+     * methods with method bodies, a nested class and an enum.
+     */
+    static File syntheticSourcesJar(int classCount) throws IOException {
+        final File jarFile = createTempJar("synthetic-sources");
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            for (int i = 0; i < classCount; i++) {
+                final String packageName = "com.example.synthetic.p" + (i % 10);
+                final String className = "Synthetic" + i;
+                jar.putNextEntry(new JarEntry(packageName.replace('.', '/') + "/" + className + ".java"));
+                jar.write(syntheticSource(packageName, className, i).getBytes(StandardCharsets.UTF_8));
+                jar.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+    /**
+     * Opens the given jar file in place, in the same way that Main does, and returns every path within it. The file
+     * system must be kept open for as long as the paths are used.
+     */
+    static FileSystem open(File jarFile) throws IOException {
+        return FileSystems.newFileSystem(jarFile.toPath(), (ClassLoader) null);
+    }
+
+    static List<Path> allFiles(FileSystem fileSystem) throws IOException {
+        try (Stream<Path> stream = Files.walk(fileSystem.getPath("/"), Integer.MAX_VALUE)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static File copyFromClasspath(String name, String[] fileNames) throws IOException {
+        final File jarFile = createTempJar(name);
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            for (final String fileName : fileNames) {
+                try (InputStream in = BenchmarkJars.class.getResourceAsStream("/" + FIXTURE_PACKAGE + fileName)) {
+                    if (in == null) {
+                        throw new IOException("Cannot find '" + fileName + "' on the classpath");
+                    }
+                    jar.putNextEntry(new JarEntry(FIXTURE_PACKAGE + fileName));
+                    copy(in, jar);
+                    jar.closeEntry();
+                }
+            }
+        }
+        return jarFile;
+    }
+
+    private static File createTempJar(String name) throws IOException {
+        final File jarFile = File.createTempFile(name, ".jar");
+        jarFile.deleteOnExit();
+        return jarFile;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static String syntheticSource(String packageName, String className, int index) {
+        final String previous = "Synthetic" + Math.max(index - 1, 0);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(packageName).append(";\n\n")
+          .append("import java.util.List;\n")
+          .append("import java.util.Map;\n\n")
+          .append("/**\n * Generated class number ").append(index).append(".\n */\n")
+          .append("public class ").append(className).append("<T extends Comparable<T>> implements java.io.Serializable {\n")
+          .append("    public static final String NAME = \"").append(className).append("\";\n")
+          .append("    protected Map<String, List<T>> values;\n")
+          .append("    private int hidden;\n\n")
+          .append("    public ").append(className).append("(Map<String, List<T>> values) {\n")
+          .append("        this.values = values;\n")
+          .append("    }\n\n");
+
+        for (int m = 0; m < 10; m++) {
+            sb.append("    // returns the values for key number ").append(m).append("\n")
+              .append("    public <R> List<T> method").append(m).append("(String key, R[] extra, int count) throws java.io.IOException {\n")
+              .append("        List<T> result = values.get(key + ").append(m).append(");\n")
+              .append("        for (int i = 0; i < count; i++) {\n")
+              .append("            if (result == null || extra.length > i) {\n")
+              .append("                throw new java.io.IOException(\"missing \" + key);\n")
+              .append("            }\n")
+              .append("        }\n")
+              .append("        return result;\n")
+              .append("    }\n\n");
+        }
+
+        sb.append("    public ").append(previous).append("<T> previous() {\n")
+          .append("        return null;\n")
+          .append("    }\n\n")
+          .append("    public static class Nested {\n")
+          .append("        public void run() {\n")
+          .append("            System.out.println(NAME);\n")
+          .append("        }\n")
+          .append("    }\n\n")
+          .append("    public enum Kind {\n")
+          .append("        FIRST(1),\n")
+          .append("        SECOND(2);\n\n")
+          .append("        private final int id;\n\n")
+          .append("        Kind(int id) {\n")
+          .append("            this.id = id;\n")
+          .append("        }\n")
+          .append("    }\n")
+          .append("}\n");
+        return sb.toString();
+    }
+}
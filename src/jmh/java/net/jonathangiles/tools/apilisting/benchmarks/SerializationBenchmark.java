@@ -0,0 +1,112 @@
+package net.jonathangiles.tools.apilisting.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import net.jonathangiles.tools.apilisting.Main;
+import net.jonathangiles.tools.apilisting.analysers.ASTAnalyser;
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.output.BinaryListingWriter;
+import net.jonathangiles.tools.apilisting.output.ListingWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.FileSystem;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many large API listings per second can be serialized to JSON, with Jackson and with the hand-written
+ * {@link ListingWriter}, and to the binary format of {@link BinaryListingWriter}. The listing is produced by analysing a generated jar, and is written to an output stream that
+ * only counts the bytes, so that disk speed is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SerializationBenchmark {
+    /**
+     * The number of generated classes in the listing. Each class produces roughly 450 tokens.
+     */
+    @Param({ "2000" })
+    public int classCount;
+
+    private APIListing apiListing;
+    private ObjectWriter jacksonWriter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final File jarFile = BenchmarkJars.syntheticSourcesJar(classCount);
+
+        apiListing = new APIListing();
+        apiListing.setName("benchmark");
+        apiListing.setTokens(new TokenBuffer());
+        try (FileSystem fileSystem = BenchmarkJars.open(jarFile)) {
+            new ASTAnalyser().analyse(BenchmarkJars.allFiles(fileSystem), jarFile, apiListing);
+        }
+
+        jacksonWriter = Main.createObjectMapper().writerWithDefaultPrettyPrinter();
+    }
+
+    @Benchmark
+    public long jackson() throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        jacksonWriter.writeValue(out, apiListing);
+        return out.count;
+    }
+
+    @Benchmark
+    public long listingWriter() throws IOException {
+        return writeListing(true);
+    }
+
+    @Benchmark
+    public long listingWriterCompact() throws IOException {
+        return writeListing(false);
+    }
+
+    @Benchmark
+    public long binaryWriter() throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        try (BinaryListingWriter writer = new BinaryListingWriter(Channels.newChannel(out))) {
+            writer.writeListing(apiListing);
+        }
+        return out.count;
+    }
+
+    private long writeListing(boolean pretty) throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        try (ListingWriter writer = new ListingWriter(Channels.newChannel(out), pretty)) {
+            writer.writeListing(apiListing);
+        }
+        return out.count;
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.jonathangiles.tools.apilisting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Analyses every jar file listed in a manifest in a single process, so that JVM startup and JIT warm-up are paid once
+ * rather than once per jar file.
+ *
+ * <p>The manifest has one tab-separated {@code <reviewName> <jarFile> <outputFile>} line per jar file. Blank lines and
+ * lines starting with '#' are ignored. A few jar files are analysed at the same time, and the files of all of them are
+ * parsed and tokenised on one shared work-stealing pool, so that a small jar finishing early does not leave threads
+ * idle. A jar file that fails to be analysed is reported and skipped, and does not affect the others.</p>
+ */
+class Batch {
+    private final Options options;
+
+    Batch(Options options) {
+        this.options = options;
+    }
+
+    static class Job {
+        private final int line;
+        private final String reviewName;
+        private final String jarFile;
+        private final String outputFile;
+
+        Job(int line, String reviewName, String jarFile, String outputFile) {
+            this.line = line;
+            this.reviewName = reviewName;
+            this.jarFile = jarFile;
+            this.outputFile = outputFile;
+        }
+    }
+
+    static List<Job> readManifest(Path manifest) throws IOException {
+        final List<Job> jobs = new ArrayList<>();
+        final List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                throw new IOException("Expected 3 tab-separated fields on line " + (i + 1) + " of '" + manifest
+                        + "' but found " + fields.length);
+            }
+            jobs.add(new Job(i + 1, fields[0], fields[1], fields[2]));
+        }
+        return jobs;
+    }
+
+    /**
+     * Analyses every jar file in the manifest, returning the number of jar files that failed.
+     */
+    int run() throws IOException {
+        final List<Job> jobs = readManifest(Paths.get(options.getBatchManifest()));
+        System.out.println("Running batch of " + jobs.size() + " jar files from '" + options.getBatchManifest() + "'");
+
+        // the jobs only coordinate - they hand the files of their jar to the shared pool and wait for the results -
+        // so a small number of them is enough to keep the pool busy
+        final ForkJoinPool pool = new ForkJoinPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(options.getBatchJobs());
+        final long start = System.nanoTime();
+        try {
+            final Main main = new Main(pool);
+            final List<Future<?>> results = new ArrayList<>();
+            for (final Job job : jobs) {
+                results.add(executor.submit(() -> {
+                    runJob(main, job);
+                    return null;
+                }));
+            }
+
+            int failures = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                final Job job = jobs.get(i);
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures++;
+                    System.err.println("Failed to analyse '" + job.jarFile + "' (line " + job.line + " of the manifest):");
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for '" + job.jarFile + "'", e);
+                }
+            }
+
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Analysed " + (jobs.size() - failures) + " of " + jobs.size() + " jar files in "
+                    + elapsedMillis + "ms" + (failures == 0 ? "" : ", " + failures + " failed"));
+            return failures;
+        } finally {
+            executor.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    private void runJob(Main main, Job job) throws IOException {
+        final File file = new File(job.jarFile);
+        if (!file.exists()) {
+            throw new IOException("Cannot find file '" + file + "'");
+        }
+
+        main.run(job.reviewName, file, job.outputFile, options.forJob(job.reviewName, job.jarFile, job.outputFile));
+    }
+}
@@ -0,0 +1,260 @@
+package net.jonathangiles.tools.apilisting;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the tool running so that the JVM, and JavaParser in particular, stays warm between listings. Clients connect
+ * to a port on the loopback interface and send one JSON request per line, and each request is answered with one JSON
+ * response line.
+ *
+ * <p>A listing request has the fields {@code ReviewName}, {@code JarFile} and optionally {@code OutputFile}. When the
+ * output file is given the listing is written there, otherwise it is returned inline in the {@code Listing} field of
+ * the response. A request with {@code Command} set to 'stats' returns the queue depth and latency of the daemon, and
+ * 'shutdown' stops it. Listing requests are queued and analysed a few at a time on one shared pool, with the options
+ * the daemon was started with, including its result cache. The threads of the pool keep their parsers from one
+ * request to the next.</p>
+ *
+ * <p>Requests are not authenticated. Any process on the machine that can connect to the port can have the daemon read
+ * any jar file, and write to any output file, that the user running the daemon can, so the daemon should only be run
+ * on machines whose other users are trusted.</p>
+ */
+class Daemon {
+    // the number of recent requests that latency percentiles are computed over
+    private static final int LATENCY_WINDOW = 1024;
+
+    private final Options options;
+    private final ObjectMapper objectMapper;
+    private final Stats stats;
+
+    private volatile ServerSocket serverSocket;
+
+    Daemon(Options options) {
+        this.options = options;
+        this.objectMapper = Main.createObjectMapper();
+        this.stats = new Stats();
+    }
+
+    void run() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(options.getBatchJobs());
+        final ExecutorService connections = Executors.newCachedThreadPool();
+
+        // the same Main, and so the same object mapper and pool, serves every request
+        final Main main = new Main(pool);
+
+        try (ServerSocket serverSocket = new ServerSocket(options.getPort(), 50, InetAddress.getLoopbackAddress())) {
+            this.serverSocket = serverSocket;
+            System.out.println("Listening for requests on " + serverSocket.getLocalSocketAddress());
+
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    // the server socket was closed by a shutdown request
+                    break;
+                }
+                connections.execute(() -> handleConnection(socket, main, executor));
+            }
+        } finally {
+            connections.shutdownNow();
+            executor.shutdownNow();
+            pool.shutdownNow();
+        }
+        System.out.println("Stopped after " + stats.completed.get() + " requests");
+    }
+
+    private void handleConnection(Socket socket, Main main, ExecutorService executor) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                ObjectNode response;
+                try {
+                    response = handleRequest(objectMapper.readTree(line), main, executor);
+                } catch (Exception e) {
+                    response = error(e);
+                }
+
+                // the response is written without a pretty printer, so that it is always a single line
+                out.write(objectMapper.writeValueAsString(response));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Connection from " + socket.getRemoteSocketAddress() + " failed: " + e);
+        }
+    }
+
+    private ObjectNode handleRequest(JsonNode request, Main main, ExecutorService executor) throws Exception {
+        final String command = request.path("Command").asText("listing");
+        switch (command) {
+            case "listing":
+                try {
+                    return handleListing(request, main, executor);
+                } catch (Exception e) {
+                    stats.failed.incrementAndGet();
+                    throw e;
+                }
+            case Options.CLIENT_STATS:
+                return stats.toJson(objectMapper.createObjectNode().put("Status", "ok"));
+            case Options.CLIENT_SHUTDOWN:
+                serverSocket.close();
+                return objectMapper.createObjectNode().put("Status", "ok");
+            default:
+                throw new IllegalArgumentException("Unknown command '" + command + "'");
+        }
+    }
+
+    private ObjectNode handleListing(JsonNode request, Main main, ExecutorService executor) throws Exception {
+        final String reviewName = requireField(request, "ReviewName");
+        final String jarFile = requireField(request, "JarFile");
+        final String outputFile = request.path("OutputFile").asText(null);
+
+        final File file = new File(jarFile);
+        if (!file.exists()) {
+            throw new IOException("Cannot find file '" + file + "'");
+        }
+
+        // an inline listing is written to a temporary file first, as that is what the analysis pipeline produces
+        final Path inlineFile = outputFile == null ? Files.createTempFile("listing", ".json") : null;
+        final String destination = outputFile == null ? inlineFile.toString() : outputFile;
+
+        // an inline listing is part of the JSON response, so it is always produced as JSON
+        final Options jobOptions = outputFile == null
+                ? options.forJob(reviewName, jarFile, destination).asJson()
+                : options.forJob(reviewName, jarFile, destination);
+
+        final long queuedNanos = System.nanoTime();
+        stats.queued.incrementAndGet();
+        try {
+            final Future<Long> result = executor.submit(() -> {
+                final long startNanos = System.nanoTime();
+                stats.queued.decrementAndGet();
+                stats.active.incrementAndGet();
+                try {
+                    main.run(reviewName, file, destination, jobOptions);
+                } finally {
+                    stats.active.decrementAndGet();
+                }
+                return startNanos;
+            });
+
+            final long startNanos;
+            try {
+                startNanos = result.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+
+            final long endNanos = System.nanoTime();
+            stats.record(endNanos - queuedNanos);
+
+            final ObjectNode response = objectMapper.createObjectNode();
+            response.put("Status", "ok");
+            response.put("QueueMillis", (startNanos - queuedNanos) / 1_000_000);
+            response.put("ElapsedMillis", (endNanos - startNanos) / 1_000_000);
+            if (outputFile == null) {
+                response.set("Listing", objectMapper.readTree(inlineFile.toFile()));
+            } else {
+                response.put("OutputFile", outputFile);
+            }
+            return response;
+        } finally {
+            if (inlineFile != null) {
+                Files.deleteIfExists(inlineFile);
+            }
+        }
+    }
+
+    private static String requireField(JsonNode request, String name) {
+        final JsonNode value = request.get(name);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Request is missing the '" + name + "' field");
+        }
+        return value.asText();
+    }
+
+    private ObjectNode error(Exception e) {
+        final ObjectNode response = objectMapper.createObjectNode();
+        response.put("Status", "error");
+        response.put("Message", String.valueOf(e.getMessage() == null ? e : e.getMessage()));
+        return response;
+    }
+
+    /**
+     * The queue depth, throughput and latency of the daemon. Latency is measured from when a request is queued until
+     * its listing is complete, and the percentiles cover the most recent requests only.
+     */
+    private static class Stats {
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final long startMillis = System.currentTimeMillis();
+
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int latencyCount;
+
+        synchronized void record(long latencyNanos) {
+            latencies[latencyCount++ % LATENCY_WINDOW] = latencyNanos;
+            completed.incrementAndGet();
+        }
+
+        ObjectNode toJson(ObjectNode node) {
+            final long[] window;
+            synchronized (this) {
+                window = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_WINDOW));
+            }
+            Arrays.sort(window);
+
+            node.put("UptimeMillis", System.currentTimeMillis() - startMillis);
+            node.put("QueueDepth", queued.get());
+            node.put("Active", active.get());
+            node.put("Completed", completed.get());
+            node.put("Failed", failed.get());
+            node.put("LatencyP50Millis", percentile(window, 0.50));
+            node.put("LatencyP95Millis", percentile(window, 0.95));
+            node.put("LatencyMaxMillis", percentile(window, 1.0));
+            return node;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.jonathangiles.tools.apilisting;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a single request to a running {@link Daemon} and reports its response, so that '--client' can be added to the
+ * usual command line to have a warm daemon produce the listing instead. An output file of '-' has the daemon return
+ * the listing inline, which is then written to stdout.
+ */
+class DaemonClient {
+    private static final String STDOUT = "-";
+
+    private final Options options;
+    private final ObjectMapper objectMapper;
+
+    DaemonClient(Options options) {
+        this.options = options;
+        this.objectMapper = Main.createObjectMapper();
+    }
+
+    /**
+     * Sends the request and returns the exit code of the process - 0 if the daemon succeeded.
+     */
+    int run() {
+        final ObjectNode request = objectMapper.createObjectNode();
+        if (options.getClientCommand() != null) {
+            request.put("Command", options.getClientCommand());
+        } else {
+            // the daemon may have been started from another directory, so paths are always sent as absolute paths
+            request.put("ReviewName", options.getReviewName());
+            request.put("JarFile", new File(options.getJarFile()).getAbsolutePath());
+            if (!STDOUT.equals(options.getOutputFile())) {
+                request.put("OutputFile", new File(options.getOutputFile()).getAbsolutePath());
+            }
+        }
+
+        final JsonNode response;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), options.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            final OutputStream out = socket.getOutputStream();
+            out.write(objectMapper.writeValueAsBytes(request));
+            out.write('\n');
+            out.flush();
+
+            final String line = in.readLine();
+            if (line == null) {
+                System.err.println("The daemon closed the connection without responding");
+                return -1;
+            }
+            response = objectMapper.readTree(line);
+        } catch (IOException e) {
+            System.err.println("Cannot reach a daemon on port " + options.getPort() + ": " + e.getMessage());
+            return -1;
+        }
+
+        if (!"ok".equals(response.path("Status").asText())) {
+            System.err.println("The daemon failed to produce the listing: " + response.path("Message").asText());
+            return -1;
+        }
+
+        try {
+            if (response.has("Listing")) {
+                System.out.print(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response.get("Listing")));
+            } else if (options.getClientCommand() != null) {
+                System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response));
+            } else {
+                System.out.println("Wrote listing to '" + response.path("OutputFile").asText() + "' in "
+                        + response.path("ElapsedMillis").asLong() + "ms, after waiting "
+                        + response.path("QueueMillis").asLong() + "ms in the queue");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        return 0;
+    }
+}
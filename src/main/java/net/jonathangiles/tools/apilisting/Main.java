@@ -3,47 +3,147 @@ package net.jonathangiles.tools.apilisting;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.jonathangiles.tools.apilisting.analysers.ASTAnalyser;
 import net.jonathangiles.tools.apilisting.analysers.Analyser;
+import net.jonathangiles.tools.apilisting.analysers.BytecodeAnalyser;
+import net.jonathangiles.tools.apilisting.analysers.EntryFilter;
+import net.jonathangiles.tools.apilisting.analysers.ListingRules;
+import net.jonathangiles.tools.apilisting.analysers.ParserCache;
 import net.jonathangiles.tools.apilisting.analysers.ReflectiveAnalyser;
+import net.jonathangiles.tools.apilisting.cache.Digests;
+import net.jonathangiles.tools.apilisting.cache.ResultCache;
+import net.jonathangiles.tools.apilisting.metrics.Metrics;
 import net.jonathangiles.tools.apilisting.model.APIListing;
-import net.jonathangiles.tools.apilisting.model.Token;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.output.BinaryListingReader;
+import net.jonathangiles.tools.apilisting.output.BinaryListingWriter;
+import net.jonathangiles.tools.apilisting.output.ListingWriter;
+import net.jonathangiles.tools.apilisting.sinks.CountingSink;
+import net.jonathangiles.tools.apilisting.sinks.InMemorySink;
+import net.jonathangiles.tools.apilisting.sinks.JsonStreamSink;
+import net.jonathangiles.tools.apilisting.sinks.ListingSink;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.FileVisitResult;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import static com.fasterxml.jackson.databind.MapperFeature.*;
 import static net.jonathangiles.tools.apilisting.model.TokenKind.*;
 
+// metrics phases are only opened to time the try block they belong to, and are never referenced within it
+@SuppressWarnings("try")
 public class Main {
+    // the version of this tool, which is part of the cache key so that cached listings are not reused across versions
+    static final String VERSION = Optional.ofNullable(Main.class.getPackage().getImplementationVersion()).orElse("development");
 
     // expected argument order:
-    // <reviewName> <jarFile> <outputFile>
+    // [options] <reviewName> <jarFile> <outputFile>
+    // or, in batch mode:
+    // [options] --batch=<manifestFile>
+    // or, in daemon mode, with clients sending the usual arguments along with --client:
+    // [options] --daemon[=<port>]
+    // or, to turn a binary listing into JSON:
+    // [--compact] [--compress=<name>] --convert <binaryFile> <outputFile>
     public static void main(String[] args) {
-        // TODO validate input
-        if (args.length != 3) {
-            System.out.println("Expected argument order: <reviewName> <jarFile> <outputFile>, e.g. \"Storage Review\" /path/to/jarfile.jar report.json");
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(Options.USAGE);
             System.exit(-1);
+            return;
+        }
+
+        if (options.isConvert()) {
+            try {
+                convert(Paths.get(options.getJarFile()), Paths.get(options.getOutputFile()), !options.isCompact(),
+                        options.getCompression());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            return;
+        }
+
+        if (options.isClient()) {
+            System.exit(new DaemonClient(options).run());
+            return;
+        }
+
+        if (options.isDaemon()) {
+            try {
+                new Daemon(options).run();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            return;
+        }
+
+        if (options.getBatchManifest() != null) {
+            final int failures;
+            try {
+                failures = new Batch(options).run();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+                return;
+            }
+            if (failures > 0) {
+                System.exit(-1);
+            }
+            return;
         }
 
-        final String reviewName = args[0];
-        final String jarFile = args[1];
-        final String outputFile = args[2];
+        final String reviewName = options.getReviewName();
+        final String jarFile = options.getJarFile();
+        final String outputFile = options.getOutputFile();
 
         System.out.println("Running with following configuration:");
         System.out.println("  Review name: '" + reviewName + "'");
         System.out.println("  Input .jar file: '" + jarFile + "'");
         System.out.println("  Output .json file: '" + outputFile + "'");
+        System.out.println("  Analyser: " + options.getAnalyser());
+        if (Options.RESOLVE_SYMBOLS.equals(options.getResolve())) {
+            System.out.println("  Type resolution: " + options.getResolve());
+        }
+        if (options.isSignaturesOnly()) {
+            System.out.println("  Signatures only: true");
+        }
+        if (!options.getClasspath().isEmpty()) {
+            System.out.println("  Classpath: " + options.getClasspath());
+        }
+        if (options.getRulesFile() != null) {
+            System.out.println("  Rules: '" + options.getRulesFile() + "'");
+        }
+        System.out.println("  Streaming output: " + options.isStream());
+        System.out.println("  Output format: " + options.getFormat());
+        System.out.println("  Compact output: " + options.isCompact());
+        if (options.getCompression() != null) {
+            System.out.println("  Compression: " + options.getCompression());
+        }
+        if (options.getMetricsOutput() != null) {
+            System.out.println("  Metrics output: '" + options.getMetricsOutput() + "'");
+        }
+        if (options.getCacheDirectory() != null) {
+            System.out.println("  Cache directory: '" + options.getCacheDirectory() + "'");
+        }
+        if (options.getIncrementalStateFile() != null) {
+            System.out.println("  Incremental state: '" + options.getIncrementalStateFile() + "'");
+        }
 
         final File file = new File(jarFile);
 
@@ -52,49 +152,160 @@ public class Main {
             System.exit(-1);
         }
 
-        new Main(reviewName, file, outputFile);
+        new Main(reviewName, file, outputFile, options);
     }
 
-    public Main(String reviewName, File inputFile, String outputFile) {
-        APIListing apiListing = new APIListing();
-        apiListing.setName(reviewName);
+    // the pool that the analyser parses and tokenises files on, which is shared by every jar in batch and daemon mode
+    private final ForkJoinPool pool;
 
-        // empty tokens list that we will fill as we process each class file
-        List<Token> tokens = new ArrayList<>();
-        apiListing.setTokens(tokens);
+    private final ObjectMapper objectMapper;
 
-//        Analyser analyser = new ReflectiveAnalyser();
-        Analyser analyser = new ASTAnalyser();
+    // the parsers of each thread of the pool, with and without --signatures-only, which every jar in batch and daemon
+    // mode reuses. A thread only creates the parser it uses
+    private final ParserCache parsers;
+    private final ParserCache signatureParsers;
 
-        final File tempDir = new File("temp/" + inputFile.getName());
+    public Main(String reviewName, File inputFile, String outputFile, Options options) {
+        this(ForkJoinPool.commonPool());
         try {
-            // delete any existing archive output and re-extract jar file
-            if (tempDir.exists()) {
-                deleteDirectory(tempDir.toPath());
-            }
-            System.out.println("Extracting jar file to '" + tempDir + "'");
-            extractArchive(inputFile.toPath(), tempDir.toPath());
-
-            // do analysis on every file - it is up to the analyser to decide to accept or reject the file
-            try (Stream<Path> stream = Files.walk(tempDir.toPath(), Integer.MAX_VALUE)) {
-                // Collect all files in the stream into a single list, so that it may be iterated on multiple
-                // times by the analyser
-                List<Path> allFiles = stream.collect(Collectors.toList());
-                analyser.analyse(allFiles, tempDir, apiListing);
-            }
+            run(reviewName, inputFile, outputFile, options);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(-1);
-        } finally {
-            try {
-                // delete temporary directory contents
-                deleteDirectory(tempDir.toPath());
-                System.out.println("Deleting temp directory '" + tempDir + "'");
-            } catch (IOException e) {
-                e.printStackTrace();
+        }
+    }
+
+    Main(ForkJoinPool pool) {
+        this.pool = pool;
+        this.objectMapper = createObjectMapper();
+        this.parsers = new ParserCache(false);
+        this.signatureParsers = new ParserCache(true);
+    }
+
+    /**
+     * Produces the listing of a single jar file, throwing rather than exiting on failure so that a failure can be
+     * isolated to the jar it happened on.
+     */
+    void run(String reviewName, File inputFile, String outputFile, Options options) throws IOException {
+        final ListingRules rules = options.getRulesFile() == null
+                ? ListingRules.DEFAULT : ListingRules.read(Paths.get(options.getRulesFile()));
+        final Analyser analyser = createAnalyser(options);
+        analyser.setRules(rules);
+
+        final Metrics metrics = options.getMetricsOutput() != null ? new Metrics() : Metrics.disabled();
+        analyser.setMetrics(metrics);
+
+        // a cached listing of the same jar file under the same review name, produced by the same analyser in the same
+        // format, is used as-is
+        final ResultCache cache = options.getCacheDirectory() == null ? null
+                : new ResultCache(Paths.get(options.getCacheDirectory()), options.getCacheMaxBytes(), options.isCacheVerify());
+        String cacheKey = null;
+        boolean cacheHit = false;
+        if (cache != null) {
+            try (Metrics.Phase phase = metrics.startPhase("cache-lookup")) {
+                final String cacheAnalyserName = analyser.getClass().getSimpleName()
+                        + (Options.RESOLVE_SYMBOLS.equals(options.getResolve()) ? "-symbols" : "")
+                        + (options.isSignaturesOnly() ? "-signatures" : "")
+                        + (options.getClasspath().isEmpty() ? "" : "-classpath-" + classpathDigest(analyser, options.getClasspath()))
+                        + (rules == ListingRules.DEFAULT ? "" : "-rules-" + Digests.sha256(rules.getKey().getBytes(StandardCharsets.UTF_8)))
+                        + (options.isStream() ? "-stream" : "")
+                        + (options.isCompact() ? "-compact" : "")
+                        + (Options.FORMAT_BINARY.equals(options.getFormat()) ? "-binary" : "")
+                        + (options.getCompression() != null ? "-" + options.getCompression() : "");
+                cacheKey = ResultCache.key(inputFile, reviewName, cacheAnalyserName, VERSION);
+                cacheHit = cache.fetch(cacheKey, Paths.get(outputFile));
+            }
+        }
+
+        if (cacheHit) {
+            System.out.println("Using cached listing for '" + inputFile + "'");
+        } else {
+            generate(reviewName, inputFile, outputFile, options, analyser, metrics);
+
+            if (cache != null) {
+                try (Metrics.Phase phase = metrics.startPhase("cache-store")) {
+                    cache.store(cacheKey, Paths.get(outputFile));
+                }
             }
         }
 
+        metrics.addCount("outputBytes", new File(outputFile).length());
+        if (metrics.isEnabled()) {
+            writeMetrics(metrics, options.getMetricsOutput());
+        }
+    }
+
+    // the SHA-256 of the digests of the content of the classpath jars, in classpath order, so that a cached listing is
+    // not used once any of the jars has changed, even if its path has not. The 'ast' analyser keeps the digests in the
+    // type indexes it opens anyway, so the jars are only read here for the other analysers
+    private static String classpathDigest(Analyser analyser, List<String> classpath) throws IOException {
+        if (analyser instanceof ASTAnalyser) {
+            return ((ASTAnalyser) analyser).getClasspathDigest();
+        }
+
+        final StringBuilder digests = new StringBuilder();
+        for (final String jar : classpath) {
+            digests.append(Digests.sha256(Paths.get(jar))).append('\n');
+        }
+        return Digests.sha256(digests.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Analyser createAnalyser(Options options) {
+        final List<Path> classpath = options.getClasspath().stream()
+                .map(Paths::get)
+                .collect(Collectors.toList());
+        switch (options.getAnalyser()) {
+            case Options.ANALYSER_REFLECTIVE:
+                final ReflectiveAnalyser reflectiveAnalyser = new ReflectiveAnalyser();
+                reflectiveAnalyser.setClasspath(classpath);
+                return reflectiveAnalyser;
+            case Options.ANALYSER_BYTECODE:
+                return new BytecodeAnalyser();
+            default:
+                final ASTAnalyser analyser = new ASTAnalyser(pool, options.isSignaturesOnly() ? signatureParsers : parsers);
+                if (options.getIncrementalStateFile() != null) {
+                    analyser.setIncrementalStateFile(Paths.get(options.getIncrementalStateFile()));
+                }
+                analyser.setParallelism(
+                        options.getScanParallelism() == 0 ? pool.getParallelism() : options.getScanParallelism(),
+                        options.getTokenizeParallelism() == 0 ? pool.getParallelism() : options.getTokenizeParallelism());
+                if (options.getQueueCapacity() != 0) {
+                    analyser.setQueueCapacity(options.getQueueCapacity());
+                }
+                if (!classpath.isEmpty()) {
+                    analyser.setClasspath(classpath, Paths.get(options.getTypeIndexDirectory()));
+                }
+                if (Options.RESOLVE_SYMBOLS.equals(options.getResolve())) {
+                    analyser.setSymbolSolverClasspath(classpath);
+                }
+                return analyser;
+        }
+    }
+
+    private void generate(String reviewName, File inputFile, String outputFile, Options options, Analyser analyser,
+                          Metrics metrics) throws IOException {
+        APIListing apiListing = new APIListing();
+        apiListing.setName(reviewName);
+
+        // empty tokens list that we will fill as we process each class file
+        TokenBuffer tokens = new TokenBuffer();
+        apiListing.setTokens(tokens);
+
+        // in streaming mode tokens are written out as the analyser produces them, otherwise they are collected into
+        // the listing and written once analysis is complete. The sink is closed once analysis succeeds, and aborted
+        // otherwise - a streamed listing that stops part way through is deleted rather than completed, so that it
+        // cannot be mistaken for the listing of the whole jar file
+        final CountingSink sink = new CountingSink(options.isStream()
+                ? new JsonStreamSink(new File(outputFile), reviewName, !options.isCompact(), options.getCompression())
+                : new InMemorySink(apiListing));
+        try {
+            analyse(analyser, inputFile, sink, metrics);
+        } catch (IOException | RuntimeException | Error e) {
+            sink.abort();
+            throw e;
+        }
+        System.out.println("Produced " + sink.getTokenCount() + " tokens from " + sink.getSourceCount() + " files");
+        metrics.addCount("tokens", sink.getTokenCount());
 
         // print to console
 //        tokens.stream().forEach(token -> {
@@ -105,56 +316,106 @@ public class Main {
 //            }
 //        });
 
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.disable(
-                    AUTO_DETECT_CREATORS,
-                    AUTO_DETECT_FIELDS,
-                    AUTO_DETECT_GETTERS,
-                    AUTO_DETECT_IS_GETTERS);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(outputFile), apiListing);
-        } catch (IOException e) {
-            e.printStackTrace();
+        try (Metrics.Phase phase = metrics.startPhase("serialize")) {
+            // closing the streaming sink writes the navigation and completes the file
+            sink.close();
+            if (Options.FORMAT_BINARY.equals(options.getFormat())) {
+                try (BinaryListingWriter writer = BinaryListingWriter.open(Paths.get(outputFile), options.getCompression())) {
+                    writer.writeListing(apiListing);
+                }
+            } else if (!options.isStream()) {
+                try (ListingWriter writer = ListingWriter.open(Paths.get(outputFile), !options.isCompact(), options.getCompression())) {
+                    writer.writeListing(apiListing);
+                }
+            }
         }
     }
 
-    private void extractArchive(Path archiveFile, Path destPath) throws IOException {
-        Files.createDirectories(destPath); // create dest path folder(s)
-
-        try (ZipFile archive = new ZipFile(archiveFile.toFile())) {
-            // sort entries by name to always create folders first
-            List<? extends ZipEntry> entries = archive.stream()
-                    .sorted(Comparator.comparing(ZipEntry::getName))
-                    .collect(Collectors.toList());
-
-            // copy each entry in the dest path
-            for (ZipEntry entry : entries) {
-                Path entryDest = destPath.resolve(entry.getName());
+    private void analyse(Analyser analyser, File inputFile, ListingSink sink, Metrics metrics) throws IOException {
+        // rather than extracting the jar file to disk, we open it as a zip file system and let the analyser read
+        // each entry in place
+        final FileSystem fileSystem;
+        try (Metrics.Phase phase = metrics.startPhase("open")) {
+            fileSystem = FileSystems.newFileSystem(inputFile.toPath(), (ClassLoader) null);
+        }
 
-                if (entry.isDirectory()) {
-                    Files.createDirectory(entryDest);
-                    continue;
-                }
+        try {
+            System.out.println("Reading jar file '" + inputFile + "' in place");
+            final Path root = fileSystem.getPath("/");
+
+            // Collect the files in the jar that the analyser reads into a single list, so that it may be iterated on
+            // multiple times by the analyser. Entries are filtered by name as the central directory is walked, and
+            // directories the analyser has no use for, such as implementation packages, are not walked at all
+            final EntryFilter filter = analyser.getEntryFilter();
+            final List<Path> files = new ArrayList<>();
+            final long[] walkedFiles = new long[1];
+            try (Metrics.Phase phase = metrics.startPhase("walk")) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return filter.acceptDirectory(dir.toString()) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        walkedFiles[0]++;
+                        if (filter.accept(file.toString())) {
+                            files.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            metrics.addCount("walkedEntries", walkedFiles[0]);
+            metrics.addCount("acceptedEntries", files.size());
 
-                Files.copy(archive.getInputStream(entry), entryDest);
+            analyser.analyse(files, inputFile, sink, sink);
+        } finally {
+            try (Metrics.Phase phase = metrics.startPhase("close")) {
+                fileSystem.close();
             }
         }
     }
 
-    private void deleteDirectory(Path path) throws IOException {
-        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                Files.delete(dir);
-                return FileVisitResult.CONTINUE;
-            }
+    /**
+     * Writes a listing produced with '--format=binary' as the same JSON that would have been written without it. The
+     * binary listing may be compressed.
+     */
+    static void convert(Path binaryFile, Path outputFile, boolean pretty, String compression) throws IOException {
+        final APIListing apiListing = BinaryListingReader.read(binaryFile);
+        try (ListingWriter writer = ListingWriter.open(outputFile, pretty, compression)) {
+            writer.writeListing(apiListing);
+        }
+        System.out.println("Converted '" + binaryFile + "' to '" + outputFile + "'");
+    }
 
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.delete(file);
-                return FileVisitResult.CONTINUE;
+    private void writeMetrics(Metrics metrics, String metricsOutput) {
+        try {
+            if (Options.METRICS_STDERR.equals(metricsOutput)) {
+                metrics.writeTo(System.err, objectMapper);
+                System.err.println();
+            } else {
+                try (OutputStream out = Files.newOutputStream(Paths.get(metricsOutput))) {
+                    metrics.writeTo(out, objectMapper);
+                }
+                System.out.println("Wrote metrics to '" + metricsOutput + "'");
             }
-        });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates an object mapper that only serializes the annotated fields of the listing model.
+     */
+    public static ObjectMapper createObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.disable(
+                AUTO_DETECT_CREATORS,
+                AUTO_DETECT_FIELDS,
+                AUTO_DETECT_GETTERS,
+                AUTO_DETECT_IS_GETTERS);
+        return objectMapper;
     }
 
 
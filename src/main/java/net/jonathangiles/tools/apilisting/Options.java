@@ -0,0 +1,550 @@
+package net.jonathangiles.tools.apilisting;
+
+import net.jonathangiles.tools.apilisting.output.Compression;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The command line options of the tool. Options start with '--' and may appear anywhere in the argument list, and all
+ * remaining arguments are the positional arguments: {@code <reviewName> <jarFile> <outputFile>}. In batch and daemon
+ * mode there are no positional arguments, as the jar files are listed in the manifest or sent by clients instead.
+ */
+public class Options {
+    static final String METRICS_STDERR = "stderr";
+
+    static final int DEFAULT_PORT = 7420;
+
+    static final String ANALYSER_AST = "ast";
+    static final String ANALYSER_REFLECTIVE = "reflective";
+    static final String ANALYSER_BYTECODE = "bytecode";
+
+    static final String RESOLVE_IMPORTS = "imports";
+    static final String RESOLVE_SYMBOLS = "symbols";
+
+    static final String DEFAULT_TYPE_INDEX_DIRECTORY =
+            Paths.get(System.getProperty("java.io.tmpdir"), "apilisting-type-index").toString();
+
+    static final String FORMAT_JSON = "json";
+    static final String FORMAT_BINARY = "binary";
+
+    static final String CLIENT_STATS = "stats";
+    static final String CLIENT_SHUTDOWN = "shutdown";
+
+    static final String USAGE =
+            "Expected argument order: [options] <reviewName> <jarFile> <outputFile>, e.g. \"Storage Review\" /path/to/jarfile.jar report.json\n" +
+            "                      or: [options] --batch=<manifestFile>\n" +
+            "                      or: [options] --daemon[=<port>]\n" +
+            "                      or: --client[=<port>] <reviewName> <jarFile> <outputFile>|-\n" +
+            "                      or: --client[=<port>] --stats|--shutdown\n" +
+            "                      or: [--compact] [--compress=<name>] --convert <binaryFile> <outputFile>\n" +
+            "Options:\n" +
+            "  --analyser=<name>           'ast' to read the sources in the jar file (the default), 'bytecode' to read the\n" +
+            "                              class files without loading them, or 'reflective' to load the classes\n" +
+            "  --resolve=<mode>            how the 'ast' analyser links type names to their declarations - 'imports' to\n" +
+            "                              resolve them from the imports of each file (the default), or 'symbols' to\n" +
+            "                              resolve them with the symbol solver, which also links inherited member types\n" +
+            "  --signatures-only           have the 'ast' analyser parse files for their declarations only, which is faster\n" +
+            "                              but leaves comments out of the field initializers printed into the listing\n" +
+            "  --classpath=<jarFiles>      the jar files the jar file depends on, separated by '" + File.pathSeparator + "', which\n" +
+            "                              the 'ast' analyser resolves type names against and the 'reflective' analyser\n" +
+            "                              loads classes with\n" +
+            "  --type-index-dir=<dir>      where the 'ast' analyser keeps the type index of each --classpath jar file, by\n" +
+            "                              default a directory in the temporary directory\n" +
+            "  --rules=<file>              the file of rules that decide which packages, types and members are listed, with\n" +
+            "                              'include <pattern>', 'exclude <pattern>' and 'access public|protected' lines\n" +
+            "  --stream                    write tokens to the output file as they are produced, with the navigation written last\n" +
+            "  --compact                   write the listing without whitespace between JSON tokens\n" +
+            "  --format=<name>             'json' to write the listing as JSON (the default), or 'binary' to write it in a\n" +
+            "                              compact binary form that --convert turns back into JSON\n" +
+            "  --convert                   write the binary listing given as the first argument as JSON to the second\n" +
+            "  --compress=<name>           compress the output file on a separate thread, with 'gzip', or with 'blocks' for\n" +
+            "                              independently compressed blocks indexed by package, which needs --stream\n" +
+            "                              for the packages to be indexed\n" +
+            "  --metrics[=<file>|stderr]   record the time, CPU and allocations of each phase as JSON, by default to\n" +
+            "                              <outputFile>.metrics.json - in batch and daemon mode only with --batch-jobs=1\n" +
+            "  --cache-dir=<dir>           reuse listings previously generated for the same jar file from this directory\n" +
+            "  --cache-size=<megabytes>    the maximum size of the cache directory, 1024 by default\n" +
+            "  --cache-verify              check the digest of a cached listing before using it\n" +
+            "  --incremental=<file>        keep per-file state in this file, so that later runs only re-parse changed files\n" +
+            "  --scan-parallelism=<count>  the number of files the 'ast' analyser parses for their types at once, by default\n" +
+            "                              the number of processors\n" +
+            "  --tokenize-parallelism=<count>\n" +
+            "                              the number of files the 'ast' analyser tokenises at once, by default the number\n" +
+            "                              of processors\n" +
+            "  --queue-capacity=<count>    the number of finished files each stage of the 'ast' analyser holds before it\n" +
+            "                              waits for the next stage to catch up, by default the number of processors\n" +
+            "  --batch=<manifestFile>      analyse every jar file listed in the manifest in one process, one tab-separated\n" +
+            "                              <reviewName> <jarFile> <outputFile> line per jar file\n" +
+            "  --batch-jobs=<count>        the number of jar files analysed at the same time in batch and daemon mode, 2 by\n" +
+            "                              default\n" +
+            "  --daemon[=<port>]           stay running and analyse the jar files that clients send to this loopback port,\n" +
+            "                              " + DEFAULT_PORT + " by default\n" +
+            "  --client[=<port>]           have a running daemon produce the listing, with '-' as the output file writing\n" +
+            "                              the listing to stdout\n" +
+            "  --stats                     with --client, print the queue depth and latency of a running daemon\n" +
+            "  --shutdown                  with --client, stop a running daemon";
+
+    private String reviewName;
+    private String jarFile;
+    private String outputFile;
+
+    private String analyser = ANALYSER_AST;
+    private String resolve = RESOLVE_IMPORTS;
+    private boolean signaturesOnly;
+    private List<String> classpath = Collections.emptyList();
+    private String typeIndexDirectory = DEFAULT_TYPE_INDEX_DIRECTORY;
+    private String rulesFile;
+    private boolean stream;
+    private boolean compact;
+    private String format = FORMAT_JSON;
+    private boolean convert;
+    private String compression;
+    private String metricsOutput;
+    private String cacheDirectory;
+    private long cacheMaxBytes = 1024L * 1024 * 1024;
+    private boolean cacheVerify;
+    private String incrementalStateFile;
+    // zero for the default of each
+    private int scanParallelism;
+    private int tokenizeParallelism;
+    private int queueCapacity;
+    private String batchManifest;
+    private int batchJobs = 2;
+    private boolean daemon;
+    private boolean client;
+    private int port = DEFAULT_PORT;
+    private String clientCommand;
+
+    public static Options parse(String[] args) {
+        final Options options = new Options();
+        final List<String> positional = new ArrayList<>();
+
+        for (final String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+
+            final int equals = arg.indexOf('=');
+            final String name = equals == -1 ? arg : arg.substring(0, equals);
+            final String value = equals == -1 ? null : arg.substring(equals + 1);
+
+            switch (name) {
+                case "--analyser":
+                    options.analyser = requireValue(name, value);
+                    if (!ANALYSER_AST.equals(options.analyser) && !ANALYSER_REFLECTIVE.equals(options.analyser)
+                            && !ANALYSER_BYTECODE.equals(options.analyser)) {
+                        throw new IllegalArgumentException("Unknown analyser '" + options.analyser + "'");
+                    }
+                    break;
+                case "--resolve":
+                    options.resolve = requireValue(name, value);
+                    if (!RESOLVE_IMPORTS.equals(options.resolve) && !RESOLVE_SYMBOLS.equals(options.resolve)) {
+                        throw new IllegalArgumentException("Unknown resolution mode '" + options.resolve + "'");
+                    }
+                    break;
+                case "--signatures-only":
+                    options.signaturesOnly = true;
+                    break;
+                case "--classpath":
+                    options.classpath = Arrays.asList(requireValue(name, value).split(Pattern.quote(File.pathSeparator)));
+                    break;
+                case "--type-index-dir":
+                    options.typeIndexDirectory = requireValue(name, value);
+                    break;
+                case "--rules":
+                    options.rulesFile = requireValue(name, value);
+                    break;
+                case "--stream":
+                    options.stream = true;
+                    break;
+                case "--compact":
+                    options.compact = true;
+                    break;
+                case "--format":
+                    options.format = requireValue(name, value);
+                    if (!FORMAT_JSON.equals(options.format) && !FORMAT_BINARY.equals(options.format)) {
+                        throw new IllegalArgumentException("Unknown format '" + options.format + "'");
+                    }
+                    break;
+                case "--convert":
+                    options.convert = true;
+                    break;
+                case "--compress":
+                    options.compression = requireValue(name, value);
+                    if (!Compression.GZIP.equals(options.compression) && !Compression.BLOCKS.equals(options.compression)) {
+                        throw new IllegalArgumentException("Unknown compression '" + options.compression + "'");
+                    }
+                    break;
+                case "--metrics":
+                    // the default file name depends on the output file, so it is resolved once all arguments are read
+                    options.metricsOutput = value == null ? "" : value;
+                    break;
+                case "--cache-dir":
+                    options.cacheDirectory = requireValue(name, value);
+                    break;
+                case "--cache-size":
+                    options.cacheMaxBytes = Long.parseLong(requireValue(name, value)) * 1024 * 1024;
+                    break;
+                case "--cache-verify":
+                    options.cacheVerify = true;
+                    break;
+                case "--incremental":
+                    options.incrementalStateFile = requireValue(name, value);
+                    break;
+                case "--scan-parallelism":
+                    options.scanParallelism = requirePositive(name, value);
+                    break;
+                case "--tokenize-parallelism":
+                    options.tokenizeParallelism = requirePositive(name, value);
+                    break;
+                case "--queue-capacity":
+                    options.queueCapacity = requirePositive(name, value);
+                    break;
+                case "--batch":
+                    options.batchManifest = requireValue(name, value);
+                    break;
+                case "--batch-jobs":
+                    options.batchJobs = requirePositive(name, value);
+                    break;
+                case "--daemon":
+                    options.daemon = true;
+                    options.port = value == null ? DEFAULT_PORT : Integer.parseInt(value);
+                    break;
+                case "--client":
+                    options.client = true;
+                    options.port = value == null ? DEFAULT_PORT : Integer.parseInt(value);
+                    break;
+                case "--stats":
+                    options.clientCommand = CLIENT_STATS;
+                    break;
+                case "--shutdown":
+                    options.clientCommand = CLIENT_SHUTDOWN;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + arg + "'");
+            }
+        }
+
+        if (RESOLVE_SYMBOLS.equals(options.resolve) && !ANALYSER_AST.equals(options.analyser)) {
+            throw new IllegalArgumentException("Option '--resolve=symbols' is only supported by the 'ast' analyser");
+        }
+        if (options.signaturesOnly && !ANALYSER_AST.equals(options.analyser)) {
+            throw new IllegalArgumentException("Option '--signatures-only' is only supported by the 'ast' analyser");
+        }
+        if (!options.classpath.isEmpty() && ANALYSER_BYTECODE.equals(options.analyser)) {
+            // class files are read without loading them, so the analyser never needs the classes they refer to
+            throw new IllegalArgumentException("Option '--classpath' is not supported by the 'bytecode' analyser");
+        }
+        if (options.incrementalStateFile != null && !ANALYSER_AST.equals(options.analyser)) {
+            throw new IllegalArgumentException("Option '--incremental' is only supported by the 'ast' analyser");
+        }
+        if ((options.scanParallelism != 0 || options.tokenizeParallelism != 0 || options.queueCapacity != 0)
+                && !ANALYSER_AST.equals(options.analyser)) {
+            throw new IllegalArgumentException("Options '--scan-parallelism', '--tokenize-parallelism' and '--queue-capacity' are only supported by the 'ast' analyser");
+        }
+
+        if (FORMAT_BINARY.equals(options.format)) {
+            // the string table is written ahead of the tokens, so no token can be written until every token is known
+            if (options.stream) {
+                throw new IllegalArgumentException("Option '--stream' cannot be used with '--format=binary'");
+            }
+            if (options.compact) {
+                throw new IllegalArgumentException("Option '--compact' only applies to JSON output");
+            }
+        }
+
+        if (options.convert) {
+            if (positional.size() != 2) {
+                throw new IllegalArgumentException("Expected 2 arguments with '--convert' but found " + positional.size());
+            }
+            options.jarFile = positional.get(0);
+            options.outputFile = positional.get(1);
+            return options;
+        }
+
+        if (options.clientCommand != null && !options.client) {
+            throw new IllegalArgumentException("Option '--" + options.clientCommand + "' requires '--client'");
+        }
+        if (options.client && options.clientCommand != null) {
+            if (!positional.isEmpty()) {
+                throw new IllegalArgumentException("Expected no arguments with '--" + options.clientCommand + "' but found " + positional.size());
+            }
+            return options;
+        }
+
+        if (options.batchManifest != null || options.daemon) {
+            final String mode = options.daemon ? "daemon" : "batch";
+            if (options.batchManifest != null && options.daemon) {
+                throw new IllegalArgumentException("Options '--batch' and '--daemon' cannot be used together");
+            }
+            if (!positional.isEmpty()) {
+                throw new IllegalArgumentException("Expected no arguments in " + mode + " mode but found " + positional.size());
+            }
+            if (options.incrementalStateFile != null) {
+                // the state file describes the files of a single jar, so it cannot be shared by every jar
+                throw new IllegalArgumentException("Option '--incremental' cannot be used in " + mode + " mode");
+            }
+            if (options.metricsOutput != null && !options.metricsOutput.isEmpty() && !METRICS_STDERR.equals(options.metricsOutput)) {
+                // every jar would write its metrics to the same file, so only the default per-jar file or stderr is allowed
+                throw new IllegalArgumentException("Option '--metrics' only accepts 'stderr' in " + mode + " mode");
+            }
+            if (options.metricsOutput != null && options.batchJobs > 1) {
+                // CPU time and allocations are measured for the whole process, so the phases of each jar would also
+                // count the work of every other jar analysed at the same time
+                throw new IllegalArgumentException("Option '--metrics' needs '--batch-jobs=1' in " + mode + " mode");
+            }
+            return options;
+        }
+
+        if (positional.size() != 3) {
+            throw new IllegalArgumentException("Expected 3 arguments but found " + positional.size());
+        }
+
+        return options.forJob(positional.get(0), positional.get(1), positional.get(2));
+    }
+
+    /**
+     * Returns a copy of these options for analysing the given jar file, as used for each line of a batch manifest.
+     */
+    Options forJob(String reviewName, String jarFile, String outputFile) {
+        final Options options = new Options();
+        options.reviewName = reviewName;
+        options.jarFile = jarFile;
+        options.outputFile = outputFile;
+        options.analyser = analyser;
+        options.resolve = resolve;
+        options.signaturesOnly = signaturesOnly;
+        options.classpath = classpath;
+        options.typeIndexDirectory = typeIndexDirectory;
+        options.rulesFile = rulesFile;
+        options.stream = stream;
+        options.compact = compact;
+        options.format = format;
+        options.compression = compression;
+        // the default file name depends on the output file
+        options.metricsOutput = "".equals(metricsOutput) ? outputFile + ".metrics.json" : metricsOutput;
+        options.cacheDirectory = cacheDirectory;
+        options.cacheMaxBytes = cacheMaxBytes;
+        options.cacheVerify = cacheVerify;
+        options.incrementalStateFile = incrementalStateFile;
+        options.scanParallelism = scanParallelism;
+        options.tokenizeParallelism = tokenizeParallelism;
+        options.queueCapacity = queueCapacity;
+        options.client = client;
+        options.port = port;
+        return options;
+    }
+
+    /**
+     * Returns a copy of these options that writes the listing as uncompressed JSON, as needed when the listing is read back as JSON
+     * rather than left in the output file.
+     */
+    Options asJson() {
+        final Options options = forJob(reviewName, jarFile, outputFile);
+        options.metricsOutput = metricsOutput;
+        options.format = FORMAT_JSON;
+        options.compression = null;
+        return options;
+    }
+
+    private static String requireValue(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Option '" + name + "' requires a value, e.g. " + name + "=<value>");
+        }
+        return value;
+    }
+
+    private static int requirePositive(String name, String value) {
+        final int count = Integer.parseInt(requireValue(name, value));
+        if (count < 1) {
+            throw new IllegalArgumentException("Option '" + name + "' must be at least 1");
+        }
+        return count;
+    }
+
+    public String getReviewName() {
+        return reviewName;
+    }
+
+    public String getJarFile() {
+        return jarFile;
+    }
+
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * The analyser that produces the listing - 'ast', 'reflective' or 'bytecode'.
+     */
+    public String getAnalyser() {
+        return analyser;
+    }
+
+    /**
+     * How the 'ast' analyser links type names to their declarations - 'imports' or 'symbols'.
+     */
+    public String getResolve() {
+        return resolve;
+    }
+
+    /**
+     * Whether the 'ast' analyser parses files for their declarations only, leaving out comments and the token stream.
+     */
+    public boolean isSignaturesOnly() {
+        return signaturesOnly;
+    }
+
+    /**
+     * The jar files the jar being analysed depends on.
+     */
+    public List<String> getClasspath() {
+        return classpath;
+    }
+
+    /**
+     * The directory that the 'ast' analyser keeps the type index of each classpath jar in.
+     */
+    public String getTypeIndexDirectory() {
+        return typeIndexDirectory;
+    }
+
+    /**
+     * The file of rules that decide which packages, types and members are listed, or null to list every public and
+     * protected type and member.
+     */
+    public String getRulesFile() {
+        return rulesFile;
+    }
+
+    /**
+     * Whether tokens are streamed to the output file as the analyser produces them, rather than being collected into
+     * the API listing and written once analysis is complete.
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Whether the listing is written without the indentation and spacing of pretty-printed JSON.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * The format the listing is written in - 'json' or 'binary'.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * How the output file is compressed - 'gzip' or 'blocks' - or null if it is not compressed.
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Whether the binary listing in {@link #getJarFile()} is converted to JSON in {@link #getOutputFile()}, rather than
+     * a jar file being analysed.
+     */
+    public boolean isConvert() {
+        return convert;
+    }
+
+    /**
+     * Where the metrics of the run are written - a file path, or 'stderr' - or null if no metrics are recorded.
+     */
+    public String getMetricsOutput() {
+        return metricsOutput;
+    }
+
+    /**
+     * The directory that generated listings are cached in, or null if caching is disabled.
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public boolean isCacheVerify() {
+        return cacheVerify;
+    }
+
+    /**
+     * The file that the per-file state of incremental analysis is kept in, or null if every file is analysed on every
+     * run.
+     */
+    public String getIncrementalStateFile() {
+        return incrementalStateFile;
+    }
+
+    /**
+     * The number of files the 'ast' analyser parses for their types at once, or zero for the default.
+     */
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    /**
+     * The number of files the 'ast' analyser tokenises at once, or zero for the default.
+     */
+    public int getTokenizeParallelism() {
+        return tokenizeParallelism;
+    }
+
+    /**
+     * The number of finished files each stage of the 'ast' analyser holds for the next stage, or zero for the default.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * The manifest of jar files to analyse in batch mode, or null if a single jar file is given on the command line.
+     */
+    public String getBatchManifest() {
+        return batchManifest;
+    }
+
+    public int getBatchJobs() {
+        return batchJobs;
+    }
+
+    /**
+     * Whether the tool stays running and analyses the jar files that clients send to {@link #getPort()}.
+     */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    /**
+     * Whether the listing is produced by a daemon running on {@link #getPort()}, rather than in this process.
+     */
+    public boolean isClient() {
+        return client;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * The command a client sends instead of a listing request - 'stats' or 'shutdown' - or null.
+     */
+    public String getClientCommand() {
+        return clientCommand;
+    }
+}
@@ -1,144 +1,527 @@
 package net.jonathangiles.tools.apilisting.analysers;
 
-import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
 import com.github.javaparser.ast.*;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.SimpleName;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.ReferenceType;
 import com.github.javaparser.ast.type.Type;
 import com.github.javaparser.ast.type.TypeParameter;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
-import net.jonathangiles.tools.apilisting.model.APIListing;
+import com.github.javaparser.resolution.types.ResolvedType;
+import net.jonathangiles.tools.apilisting.cache.Digests;
+import net.jonathangiles.tools.apilisting.metrics.Metrics;
 import net.jonathangiles.tools.apilisting.model.ChildItem;
-import net.jonathangiles.tools.apilisting.model.Token;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
 import net.jonathangiles.tools.apilisting.model.TypeKind;
+import net.jonathangiles.tools.apilisting.sinks.NavigationSink;
+import net.jonathangiles.tools.apilisting.sinks.TokenSink;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static net.jonathangiles.tools.apilisting.model.TokenKind.*;
 
+// metrics phases are only opened to time the try block they belong to, and are never referenced within it
+@SuppressWarnings("try")
 public class ASTAnalyser implements Analyser {
-    // a map of type name to unique identifier, used for navigation
-    private final Map<String, String> knownTypes;
+    // source files, other than package-info.java, outside of implementation packages
+    private static final EntryFilter ENTRY_FILTER = new EntryFilter(
+            Collections.singletonList(".java"),
+            Collections.singletonList("package-info.java"),
+            Collections.singletonList("implementation"));
+
+    // the token of each modifier - its keyword and a trailing space, exactly as the modifier prints itself - so that
+    // modifiers are not run through the pretty printer each time they are tokenised
+    private static final Map<Modifier.Keyword, String> MODIFIER_TOKENS = new EnumMap<>(Modifier.Keyword.class);
+    static {
+        for (final Modifier.Keyword keyword : Modifier.Keyword.values()) {
+            MODIFIER_TOKENS.put(keyword, keyword.asString() + " ");
+        }
+    }
+
+    // the id of every public type, by fully qualified name, used for navigation
+    private final TypeIndex typeIndex;
 
     // a map of package names to a list of types within that package
     private final Map<String, List<String>> packageNamesToTypesMap;
 
     private final Map<String, ChildItem> packageNameToNav;
 
-    private int indent;
+    // the pool that source files are parsed and tokenised on
+    private final ForkJoinPool pool;
+
+    // how many files each stage of the pipeline works on at once, and how many finished files each stage may hold
+    // before the next stage takes them
+    private int scanParallelism;
+    private int tokenizeParallelism;
+    private int queueCapacity;
+
+    // the parser of each thread of the pool, which may be shared with other analysers on the same pool
+    private ParserCache parsers;
+
+    private Metrics metrics = Metrics.disabled();
+
+    // when set, the state of each run is kept in this file so that the next run only re-parses files that changed
+    private Path incrementalStateFile;
+
+    // when set, type names are resolved by the symbol solver, with these jars as the classpath of the sources
+    private List<Path> symbolSolverClasspath;
+    private CachingTypeSolver typeSolver;
+
+    // when set, the dependency jars of the sources, and the directory their type indexes are kept in
+    private List<Path> classpath;
+    private Path typeIndexDirectory;
+    private ClasspathIndex classpathIndex;
+
+    // the rules that decide which types and members are listed, and the filter of the jar entries that applies them
+    private ListingRules rules = ListingRules.DEFAULT;
+    private EntryFilter entryFilter = ENTRY_FILTER;
 
     public ASTAnalyser() {
-        this.indent = 0;
-        this.knownTypes = new HashMap<>();
-        this.packageNamesToTypesMap = new HashMap<>();
-        this.packageNameToNav = new HashMap<>();
+        this(ForkJoinPool.commonPool());
     }
 
-    public void analyse(List<Path> allFiles, File tempDir, APIListing apiListing) {
-        // we build a custom classloader so that we can load classes that were not on the classpath
-        String rootDirectory = tempDir.getPath();
+    public ASTAnalyser(ForkJoinPool pool) {
+        this(pool, false);
+    }
 
-        ClassLoader classLoader = null;
-        try {
-            URL url = new File(rootDirectory).toURI().toURL();
-            URL[] urls = new URL[] {url};
-            classLoader = URLClassLoader.newInstance(urls);
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-            System.exit(-1);
+    /**
+     * Creates an analyser whose files are parsed for their declarations only when signatures only is true - comments
+     * are not attributed to nodes and the token stream is not kept. Comments within the field initializers and enum
+     * constant arguments that are printed into the listing are then left out of it.
+     */
+    public ASTAnalyser(ForkJoinPool pool, boolean signaturesOnly) {
+        this(pool, new ParserCache(signaturesOnly));
+    }
+
+    /**
+     * Creates an analyser that parses files with the given parsers, so that analysers that run one after another on
+     * the same pool, such as those of a daemon, reuse the parsers of its threads.
+     */
+    public ASTAnalyser(ForkJoinPool pool, ParserCache parsers) {
+        this.pool = pool;
+        this.scanParallelism = pool.getParallelism();
+        this.tokenizeParallelism = pool.getParallelism();
+        this.queueCapacity = pool.getParallelism();
+        this.parsers = parsers;
+        this.typeIndex = new TypeIndex();
+        this.packageNamesToTypesMap = new ConcurrentHashMap<>();
+        this.packageNameToNav = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enables incremental analysis. The digest of every source file, along with the types, tokens and navigation that
+     * were produced from it, is kept in the given file, and on the next run only the files whose digest changed are
+     * parsed again. The tokens of an unchanged file are also reused, unless a type it refers to has been added, removed
+     * or moved to another package.
+     */
+    public void setIncrementalStateFile(Path incrementalStateFile) {
+        this.incrementalStateFile = incrementalStateFile;
+    }
+
+    /**
+     * Resolves type names with the symbol solver rather than from the imports of each file alone, with the given jars
+     * as the classpath of the sources. This links member types inherited from supertypes, and types that the sources
+     * use without importing them by name, to the right declaration, at the cost of resolving every type in every
+     * signature. Names that the symbol solver cannot resolve, such as those from a jar that is not on the classpath,
+     * are still resolved from the imports.
+     */
+    public void setSymbolSolverClasspath(List<Path> classpath) {
+        this.symbolSolverClasspath = classpath;
+    }
+
+    /**
+     * Sets the dependency jars of the sources, so that type names that refer to the types of a dependency are not
+     * linked to a type of the same simple name in the sources. The types of each jar are indexed once, and the index
+     * is kept in the given directory for later runs against the same jar.
+     */
+    public void setClasspath(List<Path> classpath, Path typeIndexDirectory) {
+        this.classpath = classpath;
+        this.typeIndexDirectory = typeIndexDirectory;
+        this.classpathIndex = null;
+    }
+
+    /**
+     * Returns the SHA-256 of the content of the dependency jars, in classpath order, or null if there are none. The
+     * digests are kept in the type index of each jar, so this opens the indexes, which analysis then uses as they are.
+     */
+    public String getClasspathDigest() throws IOException {
+        return classpath == null || classpath.isEmpty() ? null : openClasspathIndex().getDigest();
+    }
+
+    private ClasspathIndex openClasspathIndex() throws IOException {
+        if (classpathIndex == null) {
+            classpathIndex = ClasspathIndex.open(classpath, typeIndexDirectory);
         }
-        final ClassLoader cl = classLoader;
+        return classpathIndex;
+    }
+
+    /**
+     * Sets how many files are parsed for their types at once, and how many are tokenised at once. Both default to the
+     * parallelism of the pool, and neither can usefully exceed it.
+     */
+    public void setParallelism(int scanParallelism, int tokenizeParallelism) {
+        this.scanParallelism = scanParallelism;
+        this.tokenizeParallelism = tokenizeParallelism;
+    }
+
+    /**
+     * Sets how many files a stage may have finished with before the next stage takes them, after which the stage waits
+     * for the next stage to catch up. Defaults to the parallelism of the pool.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public void setRules(ListingRules rules) {
+        this.rules = rules;
+        this.entryFilter = ENTRY_FILTER.withRules(rules);
+    }
 
+    @Override
+    public EntryFilter getEntryFilter() {
+        return entryFilter;
+    }
+
+    public void analyse(List<Path> allFiles, File inputFile, TokenSink tokenSink, NavigationSink navigationSink) throws IOException {
         // firstly we filter out the files we don't care about
-        allFiles = allFiles.stream()
-           .filter(path -> {
-               File inputFile = path.toFile();
-               String inputFileName = inputFile.toString();
-               if (inputFile.isDirectory()) return false;
-               else if (inputFileName.contains("implementation")) return false;
-               else if (inputFileName.equals("package-info.java")) return false;
-               else if (!inputFileName.endsWith(".java")) return false;
-               else return true;
-           }).collect(Collectors.toList());
+        final List<Path> javaFiles;
+        try (Metrics.Phase phase = metrics.startPhase("filter")) {
+            javaFiles = allFiles.stream()
+               .filter(path -> entryFilter.accept(path.toString()) && !Files.isDirectory(path))
+               .collect(Collectors.toList());
+        }
 
         // then we do a pass to build a map of all known types and package names, and a map of package names to nav items,
-        // followed by a pass to tokenise each file
-        allFiles.stream()
-                .map(path -> scanForTypes(path, cl))
-                .collect(Collectors.toList())
-                .stream()
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .sorted((s1, s2) -> s1.path.compareTo(s2.path))
-                .forEach(scanClass -> processSingleFile(scanClass, apiListing));
+        // followed by a pass to tokenise each file. Each pass is a pipeline stage: files are parsed in parallel, but
+        // the types they declare are indexed in the original file order as soon as each file is ready, so that the
+        // output does not depend on how the parsing was scheduled. The tokenize pass cannot start until every type is
+        // known, as any file may refer to a type declared in any other.
+        // The scan pass only keeps the types each file declares - files are parsed again when they are tokenised, so
+        // that at most one AST per thread is alive at any time, rather than the AST of every file in the jar
+        // In incremental mode, files that are unchanged since the previous run are not parsed at all - the types they
+        // declare are taken from the previous state
+        if (classpath != null && !classpath.isEmpty()) {
+            try (Metrics.Phase phase = metrics.startPhase("classpath-index")) {
+                typeIndex.setClasspath(openClasspathIndex());
+                metrics.addCount("classpathTypes", classpathIndex.size());
+            }
+        }
+
+        final String stateKey = incrementalStateKey();
+        final IncrementalState previousState = incrementalStateFile == null ? null : readIncrementalState(stateKey);
+
+        if (symbolSolverClasspath != null && !javaFiles.isEmpty()) {
+            try (Metrics.Phase phase = metrics.startPhase("symbol-solver")) {
+                // the solver is shared by every file and thread, so that each type is only looked for once
+                typeSolver = CachingTypeSolver.create(javaFiles.get(0).getRoot(), symbolSolverClasspath,
+                        CachingTypeSolver.DEFAULT_MAXIMUM_SIZE);
+                parsers = parsers.withSymbolResolver(typeSolver.toSymbolResolver());
+            }
+        }
+
+        final List<ScanClass> scanClasses = new ArrayList<>();
+        try (Metrics.Phase phase = metrics.startPhase("type-scan")) {
+            final long waitMillis = OrderedStage.run(pool, scanParallelism, queueCapacity, javaFiles,
+                    path -> scanForTypes(path, previousState),
+                    scanClass -> scanClass.ifPresent(found -> {
+                        indexTypes(found);
+                        scanClasses.add(found);
+                    }));
+            metrics.addCount("scanWaitMillis", waitMillis);
+        }
+
+        // each file is tokenised into its own buffer on the pool, and the buffers are handed to the sink in path order
+        // as soon as they are ready, so that a streaming sink writes earlier files while later ones are tokenised. When
+        // the sink falls behind, tokenising pauses rather than piling up buffers
+        final int[] reusedFiles = new int[1];
+        try (Metrics.Phase phase = metrics.startPhase("tokenize");
+             IncrementalState.Writer stateWriter = incrementalStateFile == null ? null : new IncrementalState.Writer(incrementalStateFile, stateKey)) {
+            final List<ScanClass> sortedScanClasses = scanClasses.stream()
+                    .sorted((s1, s2) -> s1.path.compareTo(s2.path))
+                    .collect(Collectors.toList());
+
+            final long waitMillis = OrderedStage.run(pool, tokenizeParallelism, queueCapacity, sortedScanClasses, this::processSingleFile, tokenizedFile -> {
+                tokenSink.acceptTokens(tokenizedFile.source, tokenizedFile.tokens);
+                tokenizedFile.packageNavs.forEach(packageNav ->
+                        packageNameToNav.get(packageNav.packageName).addChildItem(packageNav.nav));
+
+                if (stateWriter != null) {
+                    // the navigation has not been written anywhere yet, but it is only ever appended to, so the state
+                    // captures exactly what this file contributed
+                    stateWriter.write(tokenizedFile.source, new IncrementalState.Entry(tokenizedFile.scanClass.digest,
+                            tokenizedFile.scanClass.packageName, tokenizedFile.scanClass.imports, tokenizedFile.scanClass.types, tokenizedFile.lookups, tokenizedFile.tokens, tokenizedFile.packageNavs));
+                }
+                if (tokenizedFile.reused) {
+                    reusedFiles[0]++;
+                }
+            });
+            metrics.addCount("tokenizeWaitMillis", waitMillis);
+
+            // the state only replaces the previous one once every file has been tokenised and accepted by the sink
+            if (stateWriter != null) {
+                stateWriter.commit();
+            }
+        }
 
         // build the navigation
-        packageNameToNav.values().stream().sorted(Comparator.comparing(ChildItem::getText)).forEach(apiListing::addChildItem);
+        try (Metrics.Phase phase = metrics.startPhase("navigation")) {
+            final List<ChildItem> packageNavs = packageNameToNav.values().stream()
+                    .sorted(Comparator.comparing(ChildItem::getText))
+                    .collect(Collectors.toList());
+            for (final ChildItem packageNav : packageNavs) {
+                navigationSink.acceptNavigation(packageNav);
+            }
+        }
+
+        metrics.addCount("files", scanClasses.size());
+        if (typeSolver != null) {
+            metrics.addCount("typeSolverHits", typeSolver.getHits());
+            metrics.addCount("typeSolverMisses", typeSolver.getMisses());
+        }
+        if (incrementalStateFile != null) {
+            metrics.addCount("reusedFiles", reusedFiles[0]);
+        }
+    }
+
+    // the options that the state of a run is only valid for - a state written with other rules, another way of resolving
+    // type names, other dependency jars or another parse mode may hold other types and tokens for the same files
+    private String incrementalStateKey() {
+        return rules.getKey()
+                + "resolve " + (symbolSolverClasspath != null ? "symbols" : "imports") + "\n"
+                + "classpath " + (classpathIndex == null ? "" : classpathIndex.getDigest()) + "\n"
+                + "signatures-only " + parsers.isSignaturesOnly() + "\n";
+    }
+
+    private IncrementalState readIncrementalState(String stateKey) {
+        try (Metrics.Phase phase = metrics.startPhase("load-state")) {
+            final IncrementalState state = IncrementalState.read(incrementalStateFile, stateKey);
+            System.out.println("Loaded incremental state of " + state.size() + " files from '" + incrementalStateFile + "'");
+            return state;
+        }
     }
 
     private static class ScanClass {
-        private ParseResult<CompilationUnit> parseResult;
         private Path path;
 
-        public ScanClass(Path path, ParseResult<CompilationUnit> parseResult) {
-            this.parseResult = parseResult;
+        // the package of this file, and its imports - on-demand imports end in .*, and static imports are left out
+        private String packageName;
+        private List<String> imports;
+
+        // the public types declared in this file, in declaration order
+        private List<ScanType> types;
+
+        // the digest of the file content, and the state of the file from the previous run if its digest is unchanged -
+        // both are only set in incremental mode
+        private String digest;
+        private IncrementalState.Entry previous;
+
+        public ScanClass(Path path, String packageName, List<String> imports, List<ScanType> types, String digest,
+                         IncrementalState.Entry previous) {
             this.path = path;
+            this.packageName = packageName;
+            this.imports = imports;
+            this.types = types;
+            this.digest = digest;
+            this.previous = previous;
         }
     }
 
-    private Optional<ScanClass> scanForTypes(Path path, ClassLoader classLoader) {
-        File inputFile = path.toFile();
+    static class ScanType {
+        final String typeName;
+        final String packageName;
+        final String fullQualifiedName;
 
+        public ScanType(String typeName, String packageName, String fullQualifiedName) {
+            this.typeName = typeName;
+            this.packageName = packageName;
+            this.fullQualifiedName = fullQualifiedName;
+        }
+    }
+
+    private Optional<ScanClass> scanForTypes(Path path, IncrementalState previousState) {
+        String digest = null;
+        if (previousState != null) {
+            try {
+                digest = Digests.sha256(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return Optional.empty();
+            }
+
+            final IncrementalState.Entry previous = previousState.get(sourceName(path));
+            if (previous != null && previous.digest.equals(digest)) {
+                return Optional.of(new ScanClass(path, previous.packageName, previous.imports, previous.types, digest, previous));
+            }
+        }
+
+        final String fileDigest = digest;
+        return parse(path).map(compilationUnit -> {
+            List<ScanType> types = new ArrayList<>();
+            new ScanForClassTypeVisitor().visit(compilationUnit, types);
+
+            final String packageName = compilationUnit.getPackageDeclaration()
+                    .map(PackageDeclaration::getNameAsString)
+                    .orElse("");
+            final List<String> imports = new ArrayList<>();
+            for (final ImportDeclaration importDeclaration : compilationUnit.getImports()) {
+                if (!importDeclaration.isStatic()) {
+                    imports.add(importDeclaration.isAsterisk()
+                            ? importDeclaration.getNameAsString() + ".*"
+                            : importDeclaration.getNameAsString());
+                }
+            }
+            return new ScanClass(path, packageName, imports, types, fileDigest, null);
+        });
+    }
+
+    private Optional<CompilationUnit> parse(Path path) {
         try {
-            ParseResult<CompilationUnit> parseResult = new JavaParser().parse(inputFile);
-            new ScanForClassTypeVisitor().visit(parseResult.getResult().get(), knownTypes);
-            return Optional.of(new ScanClass(path, parseResult));
-        } catch (FileNotFoundException e) {
+            // JavaParser instances are not thread-safe, so each thread has its own
+            ParseResult<CompilationUnit> parseResult = parsers.get().parse(path);
+            return parseResult.getResult();
+        } catch (IOException e) {
             e.printStackTrace();
             return Optional.empty();
         }
     }
 
-    private void processSingleFile(ScanClass scanClass, APIListing apiListing) {
-        new ClassOrInterfaceVisitor().visit(scanClass.parseResult.getResult().get(), apiListing.getTokens());
+    private void indexTypes(ScanClass scanClass) {
+        for (final ScanType type : scanClass.types) {
+            packageNamesToTypesMap.computeIfAbsent(type.packageName, name -> new ArrayList<>()).add(type.typeName);
+
+            // generate a navigation item for each new package, but we don't add them to the parent yet
+            packageNameToNav.computeIfAbsent(type.packageName, ChildItem::new);
+
+            // the package name of a nested type is the name of the type it is declared in
+            typeIndex.add(type.packageName, type.typeName, type.fullQualifiedName, makeId(type.fullQualifiedName));
+        }
+    }
+
+    private static String sourceName(Path path) {
+        return path.getRoot().relativize(path).toString();
+    }
+
+    private static class TokenizedFile {
+        private final ScanClass scanClass;
+        private final String source;
+        private final TokenBuffer tokens;
+
+        // the navigation for top-level types, which is only added to the shared package navigation once all files
+        // have been tokenised, so that the navigation order does not depend on which file finished first
+        private final List<PackageNav> packageNavs;
+
+        // in incremental mode, every type name that was looked up while tokenising this file, and the id it resolved
+        // to, so that the next run can tell whether the tokens are still valid. Null when not in incremental mode
+        private final Map<String, String> lookups;
+
+        // whether the tokens were taken from the previous run rather than produced by tokenising the file
+        private final boolean reused;
+
+        public TokenizedFile(ScanClass scanClass, boolean incremental) {
+            this.scanClass = scanClass;
+            this.source = sourceName(scanClass.path);
+            this.tokens = new TokenBuffer();
+            this.packageNavs = new ArrayList<>();
+            this.lookups = incremental ? new HashMap<>() : null;
+            this.reused = false;
+        }
+
+        public TokenizedFile(ScanClass scanClass, IncrementalState.Entry previous) {
+            this.scanClass = scanClass;
+            this.source = sourceName(scanClass.path);
+            this.tokens = previous.tokens;
+            this.packageNavs = previous.packageNavs;
+            this.lookups = previous.lookups;
+            this.reused = true;
+        }
+    }
+
+    static class PackageNav {
+        final String packageName;
+        final ChildItem nav;
+
+        public PackageNav(String packageName, ChildItem nav) {
+            this.packageName = packageName;
+            this.nav = nav;
+        }
+    }
+
+    private TokenizedFile processSingleFile(ScanClass scanClass) {
+        // type names are resolved in the context of the file they are written in - the type index is complete by now,
+        // as all files have been scanned
+        final TypeIndex.Resolver resolver = typeIndex.resolver(scanClass.packageName, scanClass.types, scanClass.imports);
+
+        // an unchanged file can reuse its previous tokens, as long as every type it refers to still resolves to the
+        // same id. The symbol solver resolves names through the supertypes declared in other files, which the lookups
+        // of a file do not capture, so in that mode unchanged files are only spared the scan, and are tokenised again
+        if (scanClass.previous != null && typeSolver == null && scanClass.previous.isTokensValid(resolver)) {
+            return new TokenizedFile(scanClass, scanClass.previous);
+        }
+
+        // the AST is only reachable from this method, so it can be collected as soon as the file has been tokenised
+        final TokenizedFile tokenizedFile = new TokenizedFile(scanClass, incrementalStateFile != null);
+        parse(scanClass.path).ifPresent(compilationUnit ->
+                new ClassOrInterfaceVisitor(tokenizedFile, resolver).visit(compilationUnit, tokenizedFile.tokens));
+        return tokenizedFile;
     }
 
     private class ClassOrInterfaceVisitor extends VoidVisitorAdapter {
+        private final TokenizedFile tokenizedFile;
+
+        private final TypeIndex.Resolver resolver;
+
         private ChildItem parentNav;
 
-        public ClassOrInterfaceVisitor() {   }
+        private int indent;
 
-        ClassOrInterfaceVisitor(ChildItem parentNav) {
+        public ClassOrInterfaceVisitor(TokenizedFile tokenizedFile, TypeIndex.Resolver resolver) {
+            this(tokenizedFile, resolver, null, 0);
+        }
+
+        ClassOrInterfaceVisitor(TokenizedFile tokenizedFile, TypeIndex.Resolver resolver, ChildItem parentNav, int indent) {
+            this.tokenizedFile = tokenizedFile;
+            this.resolver = resolver;
             this.parentNav = parentNav;
+            this.indent = indent;
         }
 
         @Override
         public void visit(CompilationUnit compilationUnit, Object arg) {
-            final List<Token> tokens = (List<Token>) arg;
+            final TokenBuffer tokens = (TokenBuffer) arg;
 
             NodeList<TypeDeclaration<?>> types = compilationUnit.getTypes();
             for (final TypeDeclaration<?> typeDeclaration : types) {
-                visitClassOrInterfaceOrEnumDeclaration(typeDeclaration, tokens);
+                if (isIncluded(typeDeclaration)) {
+                    visitClassOrInterfaceOrEnumDeclaration(typeDeclaration, tokens);
+                }
             }
         }
 
-        private void visitClassOrInterfaceOrEnumDeclaration(TypeDeclaration<?> typeDeclaration, List<Token> tokens) {
+        private void visitClassOrInterfaceOrEnumDeclaration(TypeDeclaration<?> typeDeclaration, TokenBuffer tokens) {
             getTypeDeclaration(typeDeclaration, tokens);
 
             if (typeDeclaration.isEnumDeclaration()) {
@@ -151,41 +534,41 @@ public class ASTAnalyser implements Analyser {
             getInnerClass(typeDeclaration.getMembers(), tokens);
 
             // close class
-            tokens.add(makeWhitespace());
-            tokens.add(new Token(PUNCTUATION, "}"));
-            tokens.add(new Token(NEW_LINE, ""));
+            tokens.add(WHITESPACE, makeWhitespace());
+            tokens.add(PUNCTUATION, "}");
+            tokens.add(NEW_LINE, "");
         }
 
-        private void getEnumEntries(NodeList<EnumConstantDeclaration> enumConstantDeclarations, List<Token> tokens) {
+        private void getEnumEntries(NodeList<EnumConstantDeclaration> enumConstantDeclarations, TokenBuffer tokens) {
             int size = enumConstantDeclarations.size();
             indent();
 
             AtomicInteger counter = new AtomicInteger();
 
             enumConstantDeclarations.forEach(enumConstantDeclaration -> {
-                tokens.add(makeWhitespace());
-                tokens.add(new Token(MEMBER_NAME, enumConstantDeclaration.getNameAsString()));
+                tokens.add(WHITESPACE, makeWhitespace());
+                tokens.add(MEMBER_NAME, enumConstantDeclaration.getNameAsString());
 
                 enumConstantDeclaration.getArguments().stream().forEach(expression -> {
-                    tokens.add(new Token(PUNCTUATION, "("));
-                    tokens.add(new Token(TEXT, expression.toString()));
-                    tokens.add(new Token(PUNCTUATION, ")"));
+                    tokens.add(PUNCTUATION, "(");
+                    tokens.add(TEXT, expression.toString());
+                    tokens.add(PUNCTUATION, ")");
                 });
 
                 if (counter.getAndIncrement() < size - 1) {
-                    tokens.add(new Token(PUNCTUATION, ","));
+                    tokens.add(PUNCTUATION, ",");
                 } else {
-                    tokens.add(new Token(PUNCTUATION, ";"));
+                    tokens.add(PUNCTUATION, ";");
                 }
-                tokens.add(new Token(NEW_LINE, ""));
+                tokens.add(NEW_LINE, "");
             });
 
             unindent();
         }
         
-        private void getTypeDeclaration(TypeDeclaration<?> typeDeclaration, List<Token> tokens) {
+        private void getTypeDeclaration(TypeDeclaration<?> typeDeclaration, TokenBuffer tokens) {
             // Skip if the class is private or package-private
-            if (isPrivateOrPackagePrivate(typeDeclaration.getAccessSpecifier())) {
+            if (isHidden(typeDeclaration.getAccessSpecifier())) {
                 return;
             }
 
@@ -210,16 +593,16 @@ public class ASTAnalyser implements Analyser {
             final String classId = makeId(typeDeclaration.getFullyQualifiedName().get());
             ChildItem classNav = new ChildItem(classId, className, typeKind);
             if (parentNav == null) {
-                packageNameToNav.get(packageName).addChildItem(classNav);
+                tokenizedFile.packageNavs.add(new PackageNav(packageName, classNav));
             } else {
                 parentNav.addChildItem(classNav);
             }
 //            parent.addChildItem(classNav);
             parentNav = classNav;
 
-            tokens.add(new Token(KEYWORD, typeKind.getName()));
-            tokens.add(new Token(WHITESPACE, " "));
-            tokens.add(new Token(TYPE_NAME, className, classId));
+            tokens.add(KEYWORD, typeKind.getName());
+            tokens.add(WHITESPACE, " ");
+            tokens.add(TYPE_NAME, className, classId);
 
             NodeList<ClassOrInterfaceType> implementedTypes = null;
             // Type parameters of class definition
@@ -232,9 +615,9 @@ public class ASTAnalyser implements Analyser {
                 // Extends a class
                 final NodeList<ClassOrInterfaceType> extendedTypes = classOrInterfaceDeclaration.getExtendedTypes();
                 if (extendedTypes.size() > 0) {
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(KEYWORD, "extends"));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(KEYWORD, "extends");
+                    tokens.add(WHITESPACE, " ");
                     // Java only extends one class
                     for (ClassOrInterfaceType extendedType : extendedTypes) {
                         getType(extendedType, tokens);
@@ -252,40 +635,40 @@ public class ASTAnalyser implements Analyser {
 
             // implements interfaces
             if (implementedTypes != null && implementedTypes.size() > 0) {
-                tokens.add(new Token(WHITESPACE, " "));
-                tokens.add(new Token(KEYWORD, "implements"));
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(WHITESPACE, " ");
+                tokens.add(KEYWORD, "implements");
+                tokens.add(WHITESPACE, " ");
 
                 for (final ClassOrInterfaceType implementedType : implementedTypes) {
                     getType(implementedType, tokens);
-                    tokens.add(new Token(PUNCTUATION, ","));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(PUNCTUATION, ",");
+                    tokens.add(WHITESPACE, " ");
                 }
                 if (!implementedTypes.isEmpty()) {
-                    tokens.remove(tokens.size() - 1);
-                    tokens.remove(tokens.size() - 1);
+                    tokens.removeLast();
+                    tokens.removeLast();
                 }
             }
             // open ClassOrInterfaceDeclaration
-            tokens.add(new Token(WHITESPACE, " "));
-            tokens.add(new Token(PUNCTUATION, "{"));
-            tokens.add(new Token(NEW_LINE, ""));
+            tokens.add(WHITESPACE, " ");
+            tokens.add(PUNCTUATION, "{");
+            tokens.add(NEW_LINE, "");
         }
 
-        private void getFields(List<? extends FieldDeclaration> fieldDeclarations, List<Token> tokens) {
+        private void getFields(List<? extends FieldDeclaration> fieldDeclarations, TokenBuffer tokens) {
             indent();
             for ( FieldDeclaration fieldDeclaration : fieldDeclarations) {
                 // Skip if it is private or package-private field
-                if (isPrivateOrPackagePrivate(fieldDeclaration.getAccessSpecifier())) {
+                if (isHidden(fieldDeclaration.getAccessSpecifier())) {
                     continue;
                 }
 
-                tokens.add(makeWhitespace());
+                tokens.add(WHITESPACE, makeWhitespace());
 
                 final NodeList<Modifier> fieldModifiers = fieldDeclaration.getModifiers();
                 // public, protected, static, final
                 for (final Modifier fieldModifier: fieldModifiers) {
-                    tokens.add(new Token(KEYWORD, fieldModifier.toString()));
+                    tokens.add(KEYWORD, MODIFIER_TOKENS.get(fieldModifier.getKeyword()));
                 }
 
                 // field type and name
@@ -294,44 +677,44 @@ public class ASTAnalyser implements Analyser {
                     getType(fieldDeclaration, tokens);
 
                     for (VariableDeclarator variableDeclarator : variableDeclarators) {
-                        tokens.add(new Token(MEMBER_NAME, variableDeclarator.getNameAsString()));
-                        tokens.add(new Token(PUNCTUATION, ","));
-                        tokens.add(new Token(WHITESPACE, " "));
+                        tokens.add(MEMBER_NAME, variableDeclarator.getNameAsString());
+                        tokens.add(PUNCTUATION, ",");
+                        tokens.add(WHITESPACE, " ");
                     }
-                    tokens.remove(tokens.size() - 1);
-                    tokens.remove(tokens.size() - 1);
+                    tokens.removeLast();
+                    tokens.removeLast();
 
                 } else if (variableDeclarators.size() == 1) {
                     getType(fieldDeclaration, tokens);
                     final VariableDeclarator variableDeclarator = variableDeclarators.get(0);
-                    tokens.add(new Token(MEMBER_NAME, variableDeclarator.getNameAsString()));
+                    tokens.add(MEMBER_NAME, variableDeclarator.getNameAsString());
 
                     final Optional<Expression> variableDeclaratorOption = variableDeclarator.getInitializer();
                     if (variableDeclaratorOption.isPresent()) {
-                        tokens.add(new Token(WHITESPACE, " "));
-                        tokens.add(new Token(PUNCTUATION, "="));
-                        tokens.add(new Token(WHITESPACE, " "));
-                        tokens.add(new Token(TEXT, variableDeclaratorOption.get().toString()));
+                        tokens.add(WHITESPACE, " ");
+                        tokens.add(PUNCTUATION, "=");
+                        tokens.add(WHITESPACE, " ");
+                        tokens.add(TEXT, variableDeclaratorOption.get().toString());
                     }
                 } else {
                     // will not run at here
                 }
 
                 // close the variable declaration
-                tokens.add(new Token(PUNCTUATION, ";"));
-                tokens.add(new Token(NEW_LINE, ""));
+                tokens.add(PUNCTUATION, ";");
+                tokens.add(NEW_LINE, "");
             }
             unindent();
         }
 
-        private void getConstructor(List<? extends ConstructorDeclaration> constructorDeclarations, List<Token> tokens) {
+        private void getConstructor(List<? extends ConstructorDeclaration> constructorDeclarations, TokenBuffer tokens) {
             indent();
             for (final ConstructorDeclaration constructorDeclaration : constructorDeclarations) {
                 // Skip if not public
-                if (isPrivateOrPackagePrivate(constructorDeclaration.getAccessSpecifier())) {
+                if (isHidden(constructorDeclaration.getAccessSpecifier())) {
                     continue;
                 }
-                tokens.add(makeWhitespace());
+                tokens.add(WHITESPACE, makeWhitespace());
 
                 // constructor modifiers: public
                 getModifiers(constructorDeclaration.getModifiers(), tokens);
@@ -346,22 +729,22 @@ public class ASTAnalyser implements Analyser {
                 getThrowException(constructorDeclaration, tokens);
 
                 // close statements
-                tokens.add(new Token(PUNCTUATION, "{"));
-                tokens.add(new Token(PUNCTUATION, "}"));
-                tokens.add(new Token(NEW_LINE, ""));
+                tokens.add(PUNCTUATION, "{");
+                tokens.add(PUNCTUATION, "}");
+                tokens.add(NEW_LINE, "");
             }
             unindent();
         }
 
-        private void getMethods(List<? extends MethodDeclaration> methodDeclarations, List<Token> tokens) {
+        private void getMethods(List<? extends MethodDeclaration> methodDeclarations, TokenBuffer tokens) {
             indent();
             for (final MethodDeclaration methodDeclaration : methodDeclarations) {
                 // Skip if not public API
-                if (isPrivateOrPackagePrivate(methodDeclaration.getAccessSpecifier())) {
+                if (isHidden(methodDeclaration.getAccessSpecifier())) {
                     continue;
                 }
 
-                tokens.add(makeWhitespace());
+                tokens.add(WHITESPACE, makeWhitespace());
 
                 // modifiers
                 getModifiers(methodDeclaration.getModifiers(), tokens);
@@ -379,125 +762,117 @@ public class ASTAnalyser implements Analyser {
                 getThrowException(methodDeclaration, tokens);
 
                 // close statements
-                tokens.add(new Token(PUNCTUATION, "{"));
-                tokens.add(new Token(PUNCTUATION, "}"));
-                tokens.add(new Token(NEW_LINE, ""));
+                tokens.add(PUNCTUATION, "{");
+                tokens.add(PUNCTUATION, "}");
+                tokens.add(NEW_LINE, "");
             }
             unindent();
         }
 
-        private void getInnerClass(NodeList<BodyDeclaration<?>> bodyDeclarations, List<Token> tokens) {
+        private void getInnerClass(NodeList<BodyDeclaration<?>> bodyDeclarations, TokenBuffer tokens) {
             for (final BodyDeclaration bodyDeclaration : bodyDeclarations) {
-                if (bodyDeclaration.isEnumDeclaration() || bodyDeclaration.isClassOrInterfaceDeclaration()) {
+                if ((bodyDeclaration.isEnumDeclaration() || bodyDeclaration.isClassOrInterfaceDeclaration())
+                        && isIncluded(bodyDeclaration.asTypeDeclaration())) {
                     indent();
-                    tokens.add(makeWhitespace());
-                    new ClassOrInterfaceVisitor(parentNav).visitClassOrInterfaceOrEnumDeclaration(bodyDeclaration.asTypeDeclaration(), tokens);
+                    tokens.add(WHITESPACE, makeWhitespace());
+                    new ClassOrInterfaceVisitor(tokenizedFile, resolver, parentNav, indent).visitClassOrInterfaceOrEnumDeclaration(bodyDeclaration.asTypeDeclaration(), tokens);
                     unindent();
                 }
             }
         }
 
-        private void getModifiers(NodeList<Modifier> modifiers, List<Token> tokens) {
+        private void getModifiers(NodeList<Modifier> modifiers, TokenBuffer tokens) {
             for (final Modifier modifier : modifiers) {
-                tokens.add(new Token(KEYWORD, modifier.toString()));
+                tokens.add(KEYWORD, MODIFIER_TOKENS.get(modifier.getKeyword()));
             }
         }
 
-        private boolean isPrivateOrPackagePrivate(AccessSpecifier accessSpecifier) {
-            return accessSpecifier.equals(AccessSpecifier.PRIVATE)
-                    || accessSpecifier.equals(AccessSpecifier.PACKAGE_PRIVATE);
-        }
-
-        private void getDeclarationNameAndParameters(CallableDeclaration callableDeclaration, NodeList<Parameter> parameters, List<Token> tokens) {
+        private void getDeclarationNameAndParameters(CallableDeclaration callableDeclaration, NodeList<Parameter> parameters, TokenBuffer tokens) {
             String name = callableDeclaration.getNameAsString();
 
             String definitionId = callableDeclaration.getDeclarationAsString().replaceAll(" ", "-");
-            tokens.add(new Token(MEMBER_NAME, name, definitionId));
+            tokens.add(MEMBER_NAME, name, definitionId);
 
-            tokens.add(new Token(PUNCTUATION, "("));
+            tokens.add(PUNCTUATION, "(");
             if (parameters.size() > 0) {
                 for (final Parameter parameter : parameters) {
                     getType(parameter, tokens);
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(TEXT, parameter.getNameAsString()));
-                    tokens.add(new Token(PUNCTUATION, ","));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(TEXT, parameter.getNameAsString());
+                    tokens.add(PUNCTUATION, ",");
+                    tokens.add(WHITESPACE, " ");
                 }
-                tokens.remove(tokens.size() - 1);
-                tokens.remove(tokens.size() - 1);
+                tokens.removeLast();
+                tokens.removeLast();
             }
             // close declaration
-            tokens.add(new Token(PUNCTUATION, ")"));
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.add(PUNCTUATION, ")");
+            tokens.add(WHITESPACE, " ");
         }
 
-        private void getTypeParameters(NodeList<TypeParameter> typeParameters, List<Token> tokens) {
+        private void getTypeParameters(NodeList<TypeParameter> typeParameters, TokenBuffer tokens) {
             final int size = typeParameters.size();
             if (size == 0) {
                 return;
             }
-            tokens.add(new Token(PUNCTUATION, "<"));
+            tokens.add(PUNCTUATION, "<");
             for (int i = 0; i < size; i++) {
                 final TypeParameter typeParameter = typeParameters.get(i);
                 getGenericTypeParameter(typeParameter, tokens);
                 if (i != size - 1) {
-                    tokens.add(new Token(PUNCTUATION, ","));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(PUNCTUATION, ",");
+                    tokens.add(WHITESPACE, " ");
                 }
             }
-            tokens.add(new Token(PUNCTUATION, ">"));
+            tokens.add(PUNCTUATION, ">");
         }
 
-        private void getGenericTypeParameter(TypeParameter typeParameter, List<Token> tokens) {
+        private void getGenericTypeParameter(TypeParameter typeParameter, TokenBuffer tokens) {
             // set navigateToId
             final String typeName = typeParameter.getNameAsString();
-            final Token token = new Token(TYPE_NAME, typeName);
-            if (knownTypes.containsKey(typeName)) {
-                token.setNavigateToId(knownTypes.get(typeName));
-            }
-            tokens.add(token);
+            tokens.add(TYPE_NAME, typeName, null, lookupType(typeName));
             // get type bounds
             final NodeList<ClassOrInterfaceType> typeBounds = typeParameter.getTypeBound();
             final int size = typeBounds.size();
             if (size != 0) {
-                tokens.add(new Token(WHITESPACE, " "));
-                tokens.add(new Token(KEYWORD, "extends"));
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(WHITESPACE, " ");
+                tokens.add(KEYWORD, "extends");
+                tokens.add(WHITESPACE, " ");
                 for (int i = 0; i < size; i++) {
                     getType(typeBounds.get(i), tokens);
                 }
             }
         }
 
-        private void getThrowException(CallableDeclaration callableDeclaration, List<Token> tokens) {
+        private void getThrowException(CallableDeclaration callableDeclaration, TokenBuffer tokens) {
             final NodeList<ReferenceType> thrownExceptions = callableDeclaration.getThrownExceptions();
             if (thrownExceptions.size() == 0) {
                 return;
             }
 
-            tokens.add(new Token(STRING_LITERAL, "throws"));
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.add(STRING_LITERAL, "throws");
+            tokens.add(WHITESPACE, " ");
 
             for (final ReferenceType referenceType : thrownExceptions) {
-                tokens.add(new Token(TYPE_NAME, referenceType.getElementType().toString()));
-                tokens.add(new Token(PUNCTUATION, ","));
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(TYPE_NAME, referenceType.getElementType().toString());
+                tokens.add(PUNCTUATION, ",");
+                tokens.add(WHITESPACE, " ");
             }
-            tokens.remove(tokens.size() - 1);
-            tokens.remove(tokens.size() - 1);
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.removeLast();
+            tokens.removeLast();
+            tokens.add(WHITESPACE, " ");
         }
 
-        private void getType(Object type, List<Token> tokens) {
+        private void getType(Object type, TokenBuffer tokens) {
             if (type instanceof Parameter) {
                 final Parameter parameterType = (Parameter) type;
                 getClassType(parameterType.getType(), tokens);
             } else if (type instanceof MethodDeclaration) {
                 getClassType(((MethodDeclaration)type).getType(), tokens);
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(WHITESPACE, " ");
             } else if (type instanceof FieldDeclaration) {
                 getClassType(((FieldDeclaration)type).getElementType(), tokens);
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(WHITESPACE, " ");
             } else if (type instanceof ClassOrInterfaceType) {
                 getClassType(((ClassOrInterfaceType)type), tokens);
             } else {
@@ -505,13 +880,13 @@ public class ASTAnalyser implements Analyser {
             }
         }
 
-        private void getClassType(Type type, List<Token> tokens) {
+        private void getClassType(Type type, TokenBuffer tokens) {
             if (type.isArrayType()) {
                 getClassType(type.getElementType(), tokens);
                 //TODO: need to correct int[][] scenario
-                tokens.add(new Token(PUNCTUATION, "[]"));
+                tokens.add(PUNCTUATION, "[]");
             } else if (type.isPrimitiveType() || type.isVoidType()) {
-                tokens.add(new Token(TYPE_NAME, type.toString()));
+                tokens.add(TYPE_NAME, type.toString());
             } else if (type.isReferenceType() || type.isTypeParameter() || type.isWildcardType()) {
                 getTypeDFS(type, tokens);
             } else {
@@ -519,16 +894,12 @@ public class ASTAnalyser implements Analyser {
             }
         }
 
-        private void getTypeDFS(Node node, List<Token> tokens) {
+        private void getTypeDFS(Node node, TokenBuffer tokens) {
             final List<Node> nodes = node.getChildNodes();
             final int childrenSize = nodes.size();
             if (childrenSize <= 1) {
                 final String typeName = node.toString();
-                final Token token = new Token(TYPE_NAME, typeName);
-                if (knownTypes.containsKey(typeName)) {
-                    token.setNavigateToId(knownTypes.get(typeName));
-                }
-                tokens.add(token);
+                tokens.add(TYPE_NAME, typeName, null, lookupType(node, typeName));
                 return;
             }
 
@@ -536,34 +907,78 @@ public class ASTAnalyser implements Analyser {
                 final Node currentNode = nodes.get(i);
 
                 if (i == 1) {
-                    tokens.add(new Token(PUNCTUATION, "<"));
+                    tokens.add(PUNCTUATION, "<");
                 }
 
                 getTypeDFS(currentNode, tokens);
 
                 if (i != 0 && i != childrenSize - 1) {
-                    tokens.add(new Token(PUNCTUATION, ","));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(PUNCTUATION, ",");
+                    tokens.add(WHITESPACE, " ");
                 }
 
                 if (i != 0 && i == childrenSize - 1) {
-                    tokens.add(new Token(PUNCTUATION, ">"));
+                    tokens.add(PUNCTUATION, ">");
                 }
             }
         }
+
+        private String lookupType(Node node, String typeName) {
+            // the name of a type with type arguments is its own node, within the node of the type
+            final Node typeNode = node instanceof SimpleName ? node.getParentNode().orElse(null) : node;
+            if (typeSolver == null || !(typeNode instanceof ClassOrInterfaceType)) {
+                return lookupType(typeName);
+            }
+
+            final ResolvedType resolvedType;
+            try {
+                resolvedType = ((ClassOrInterfaceType) typeNode).resolve();
+            } catch (RuntimeException e) {
+                // the symbol solver reports a type it cannot resolve with one of several exceptions - most often as it
+                // comes from a jar that is not on the classpath - so we fall back to the imports
+                return lookupType(typeName);
+            }
+
+            // a type variable is never linked, even when a type of the same name exists
+            if (!resolvedType.isReferenceType()) {
+                return null;
+            }
+            // a qualified name is looked up as it is, so the next run can check it without the symbol solver
+            return lookupType(resolvedType.asReferenceType().getQualifiedName());
+        }
+
+        private String lookupType(String typeName) {
+            final String typeId = resolver.resolve(typeName);
+            if (tokenizedFile.lookups != null) {
+                tokenizedFile.lookups.put(typeName, typeId);
+            }
+            return typeId;
+        }
+
+        private void indent() {
+            indent += 4;
+        }
+
+        private void unindent() {
+            indent = Math.max(indent - 4, 0);
+        }
+
+        private String makeWhitespace() {
+            return Indentation.of(indent);
+        }
     }
 
-    private class ScanForClassTypeVisitor extends VoidVisitorAdapter<Map<String, String>> {
+    private class ScanForClassTypeVisitor extends VoidVisitorAdapter<List<ScanType>> {
         @Override
-        public void visit(CompilationUnit compilationUnit, Map<String, String> arg) {
+        public void visit(CompilationUnit compilationUnit, List<ScanType> arg) {
             for (final TypeDeclaration<?> typeDeclaration : compilationUnit.getTypes()) {
                 getTypeDeclaration(typeDeclaration, arg);
             }
         }
 
-        private void getTypeDeclaration(TypeDeclaration<?> typeDeclaration, Map<String, String> knownTypes) {
+        private void getTypeDeclaration(TypeDeclaration<?> typeDeclaration, List<ScanType> types) {
             // Skip if the class is private or package-private
-            if (isPrivateOrPackagePrivate(typeDeclaration.getAccessSpecifier())) {
+            if (isHidden(typeDeclaration.getAccessSpecifier())) {
                 return;
             }
 
@@ -573,47 +988,39 @@ public class ASTAnalyser implements Analyser {
 
             final String fullQualifiedName = typeDeclaration.getFullyQualifiedName().get();
 
+            // a type the rules leave out is not linked to, and neither are the types nested within it
+            if (!rules.includesType(fullQualifiedName)) {
+                return;
+            }
+
             // determine the package name for this class
             String typeName = typeDeclaration.getNameAsString();
             String packageName = fullQualifiedName.substring(0, fullQualifiedName.lastIndexOf("."));
-            packageNamesToTypesMap.computeIfAbsent(packageName, name -> new ArrayList<>()).add(typeName);
-
-            // generate a navigation item for each new package, but we don't add them to the parent yet
-            packageNameToNav.computeIfAbsent(packageName, name -> new ChildItem(packageName));
-
-            knownTypes.put(typeName, makeId(fullQualifiedName));
+            types.add(new ScanType(typeName, packageName, fullQualifiedName));
 
             for (final Object bodyDeclaration : typeDeclaration.getMembers()) {
                 BodyDeclaration bodyDeclarationMember = (BodyDeclaration)bodyDeclaration;
                 if (bodyDeclarationMember.isEnumDeclaration() || bodyDeclarationMember.isClassOrInterfaceDeclaration()) {
-                    getTypeDeclaration(bodyDeclarationMember.asTypeDeclaration(), knownTypes);
+                    getTypeDeclaration(bodyDeclarationMember.asTypeDeclaration(), types);
                 }
             }
         }
     }
 
-    private boolean isPrivateOrPackagePrivate(AccessSpecifier accessSpecifier) {
+    // whether a type or member with the given access is left out of the listing - protected ones are only listed when
+    // the rules allow them
+    private boolean isHidden(AccessSpecifier accessSpecifier) {
         return accessSpecifier.equals(AccessSpecifier.PRIVATE)
-                || accessSpecifier.equals(AccessSpecifier.PACKAGE_PRIVATE);
+                || accessSpecifier.equals(AccessSpecifier.PACKAGE_PRIVATE)
+                || (rules.isPublicOnly() && accessSpecifier.equals(AccessSpecifier.PROTECTED));
     }
 
-    private String makeId(String fullPath) {
-        return fullPath.replaceAll(" ", "-");
-    }
-
-    private void indent() {
-        indent += 4;
-    }
-
-    private void unindent() {
-        indent = Math.max(indent - 4, 0);
+    // whether the rules list the given type - a type that is not listed is left out along with everything within it
+    private boolean isIncluded(TypeDeclaration<?> typeDeclaration) {
+        return typeDeclaration.getFullyQualifiedName().map(rules::includesType).orElse(true);
     }
 
-    private Token makeWhitespace() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < indent; i++) {
-            sb.append(" ");
-        }
-        return new Token(WHITESPACE, sb.toString());
+    private String makeId(String fullPath) {
+        return fullPath.replaceAll(" ", "-");
     }
 }
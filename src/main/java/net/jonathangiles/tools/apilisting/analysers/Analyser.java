@@ -1,12 +1,69 @@
 package net.jonathangiles.tools.apilisting.analysers;
 
+import net.jonathangiles.tools.apilisting.metrics.Metrics;
 import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.sinks.InMemorySink;
+import net.jonathangiles.tools.apilisting.sinks.NavigationSink;
+import net.jonathangiles.tools.apilisting.sinks.TokenSink;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.List;
 
 public interface Analyser {
 
-    void analyse(List<Path> allFiles, File tempDir, APIListing apiListing);
+    /**
+     * Analyses the given files, pushing the resulting tokens and navigation into the given sinks as they are produced.
+     * Tokens are pushed in listing order, and navigation items are pushed once they are complete.
+     *
+     * @param allFiles the paths within the input jar file, either all of them or only those accepted by
+     *      {@link #getEntryFilter()} - the analyser applies its filter either way. The paths belong to a zip file system that reads the jar
+     *      file in place, so they must be accessed through {@link java.nio.file.Files} rather than {@link Path#toFile()}.
+     * @param inputFile the jar file that the paths were read from.
+     * @param tokenSink the sink to push tokens into.
+     * @param navigationSink the sink to push top-level navigation items into.
+     * @throws IOException if either sink fails to accept what it is given.
+     */
+    void analyse(List<Path> allFiles, File inputFile, TokenSink tokenSink, NavigationSink navigationSink) throws IOException;
+
+    /**
+     * The filter of the jar entries that this analyser reads, which the caller may apply while walking the jar so that
+     * the entries the analyser has no use for are never listed. The default accepts every entry.
+     */
+    default EntryFilter getEntryFilter() {
+        return EntryFilter.ALL;
+    }
+
+    /**
+     * Sets the rules that decide which types and members are listed. Analysers that do not support rules list every
+     * public and protected type and member, which is the default.
+     */
+    default void setRules(ListingRules rules) {
+        // no-op
+    }
+
+    /**
+     * Sets the metrics that the analyser records the time spent in each of its phases into. Analysers that do not
+     * support metrics ignore this, which is the default.
+     */
+    default void setMetrics(Metrics metrics) {
+        // no-op
+    }
+
+    /**
+     * Analyses the given files and appends the resulting tokens and navigation to the given API listing.
+     *
+     * @see #analyse(List, File, TokenSink, NavigationSink)
+     */
+    default void analyse(List<Path> allFiles, File inputFile, APIListing apiListing) {
+        final InMemorySink sink = new InMemorySink(apiListing);
+        try {
+            analyse(allFiles, inputFile, sink, sink);
+        } catch (IOException e) {
+            // the in-memory sink never throws
+            throw new UncheckedIOException(e);
+        }
+    }
 }
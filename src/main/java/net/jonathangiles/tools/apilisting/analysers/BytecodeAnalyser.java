@@ -0,0 +1,479 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import net.jonathangiles.tools.apilisting.analysers.bytecode.ClassFile;
+import net.jonathangiles.tools.apilisting.analysers.bytecode.InnerClassInfo;
+import net.jonathangiles.tools.apilisting.analysers.bytecode.MemberInfo;
+import net.jonathangiles.tools.apilisting.analysers.bytecode.TypeSignature;
+import net.jonathangiles.tools.apilisting.metrics.Metrics;
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.model.TypeKind;
+import net.jonathangiles.tools.apilisting.sinks.NavigationSink;
+import net.jonathangiles.tools.apilisting.sinks.TokenSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static java.lang.reflect.Modifier.isAbstract;
+import static java.lang.reflect.Modifier.isFinal;
+import static java.lang.reflect.Modifier.isProtected;
+import static java.lang.reflect.Modifier.isPublic;
+import static java.lang.reflect.Modifier.isStatic;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.KEYWORD;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.MEMBER_NAME;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.NEW_LINE;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.PUNCTUATION;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.TEXT;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.TYPE_NAME;
+import static net.jonathangiles.tools.apilisting.model.TokenKind.WHITESPACE;
+
+/**
+ * Produces the same listing as {@link ReflectiveAnalyser}, but by reading each class file directly rather than loading
+ * it. Nothing is linked or initialised, so a jar can be analysed without its dependencies on the classpath, and each
+ * class only costs the few strings its API is made of.
+ *
+ * <p>Because classes are not loaded, a few things differ from the reflective listing: synthetic members, such as
+ * bridge methods, are left out, only the public member classes a class declares itself are listed within it (not those
+ * it inherits), and wildcards and generic arrays are written out rather than skipped.</p>
+ */
+// metrics phases are only opened to time the try block they belong to, and are never referenced within it
+@SuppressWarnings("try")
+public class BytecodeAnalyser implements Analyser {
+    // class files, other than module-info.class, outside of implementation packages
+    private static final EntryFilter ENTRY_FILTER = new EntryFilter(
+            Collections.singletonList(".class"),
+            Collections.singletonList("module-info.class"),
+            Collections.singletonList("implementation"));
+
+    private int indent = 0;
+
+    // maps from a class internal name to the id generated with makeId(ClassFile) - keyed by the full name rather than
+    // the simple name, so that classes with the same simple name in different packages are linked to their own
+    // declarations
+    private final Map<String, String> knownTypes;
+
+    // the public and protected classes of the jar, by internal name, so that member classes can be found
+    private final Map<String, ClassFile> classFiles;
+
+    private Metrics metrics = Metrics.disabled();
+
+    // the rules that decide which classes and members are listed, and the filter of the jar entries that applies them
+    private ListingRules rules = ListingRules.DEFAULT;
+    private EntryFilter entryFilter = ENTRY_FILTER;
+
+    public BytecodeAnalyser() {
+        this.knownTypes = new HashMap<>();
+        this.classFiles = new HashMap<>();
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setRules(ListingRules rules) {
+        this.rules = rules;
+        this.entryFilter = ENTRY_FILTER.withRules(rules);
+    }
+
+    @Override
+    public EntryFilter getEntryFilter() {
+        return entryFilter;
+    }
+
+    public void analyse(List<Path> allFiles, File inputFile, TokenSink tokenSink, NavigationSink navigationSink) throws IOException {
+        // firstly we filter out the files we don't care about
+        final List<Path> paths;
+        try (Metrics.Phase phase = metrics.startPhase("filter")) {
+            paths = allFiles.stream()
+                    .filter(path -> entryFilter.accept(path.toString()) && !Files.isDirectory(path))
+                    .collect(Collectors.toList());
+        }
+
+        // then we do a pass to build a map of all known types,
+        // followed by a pass to tokenise each file
+        final List<ScanClass> scanClasses;
+        try (Metrics.Phase phase = metrics.startPhase("type-scan")) {
+            scanClasses = paths.stream()
+                    .map(this::scanForTypes)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
+        }
+
+        // navigation is pushed as each class completes, so it is part of the tokenize phase
+        try (Metrics.Phase phase = metrics.startPhase("tokenize")) {
+            for (final ScanClass scanClass : scanClasses) {
+                processSingleFile(scanClass, tokenSink, navigationSink);
+            }
+        }
+
+        metrics.addCount("files", scanClasses.size());
+    }
+
+    private static class ScanClass {
+        private ClassFile classFile;
+        private Path path;
+
+        public ScanClass(Path path, ClassFile classFile) {
+            this.classFile = classFile;
+            this.path = path;
+        }
+    }
+
+    private Optional<ScanClass> scanForTypes(Path path) {
+        final ClassFile classFile;
+        try {
+            classFile = ClassFile.read(Files.readAllBytes(path));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot read class file '" + path + "': " + e.getMessage());
+            return Optional.empty();
+        }
+
+        final int modifiers = classFile.getDeclaredAccessFlags();
+        if (isHidden(modifiers) || !isIncluded(classFile)) {
+            return Optional.empty();
+        }
+
+        knownTypes.put(classFile.getName(), makeId(classFile));
+        classFiles.put(classFile.getName(), classFile);
+        return Optional.of(new ScanClass(path, classFile));
+    }
+
+    private void processSingleFile(ScanClass scanClass, TokenSink tokenSink, NavigationSink navigationSink) throws IOException {
+        // Root Navigation
+        ChildItem rootNavForJar = new ChildItem(scanClass.path.getFileName().toString());
+
+        // each class is tokenised into its own buffer, which is then handed to the sink in one go
+        final TokenBuffer tokens = new TokenBuffer();
+        getClassAPI(scanClass.classFile, tokens, rootNavForJar);
+        tokenSink.acceptTokens(scanClass.path.getRoot().relativize(scanClass.path).toString(), tokens);
+
+        // the navigation is complete once the class and its enclosed classes have been processed
+        navigationSink.acceptNavigation(rootNavForJar);
+    }
+
+    private boolean getClassAPI(ClassFile classFile, TokenBuffer tokens, ChildItem parent) {
+        // a class the rules leave out is not listed, and neither are the classes nested within it
+        if (!isIncluded(classFile)) {
+            return false;
+        }
+
+        // class modifier
+        boolean isPublicClass = getModifiers(classFile.getDeclaredAccessFlags(), tokens);
+        if (!isPublicClass) {
+            return false;
+        }
+
+        final String className = classFile.getSimpleName();
+        final String classId = makeId(classFile);
+        final String declaringTypeName = classFile.getName().replace('/', '.');
+
+        // Create navigation for this class and add it to the parent
+        ChildItem classNav = new ChildItem(classId, className, getTypeKind(classFile));
+        parent.addChildItem(classNav);
+
+        // class name
+        tokens.add(KEYWORD, "class");
+        tokens.add(WHITESPACE, " ");
+        tokens.add(TYPE_NAME, className, classId);
+        tokens.add(WHITESPACE, " ");
+        tokens.add(PUNCTUATION, "{");
+        tokens.add(NEW_LINE, "");
+
+        indent();
+
+        // fields
+        classFile.getFields().stream()
+                .filter(field -> !field.isSynthetic())
+                .sorted(Comparator.comparing(MemberInfo::getName))
+                .forEach(field ->  {
+                    // modifiers
+                    boolean isPublicAPI = getModifiers(field.getAccessFlags(), tokens);
+                    if (!isPublicAPI) {
+                        return;
+                    }
+
+                    // field type
+                    getType(TypeSignature.parse(field.getSignature() != null ? field.getSignature() : field.getDescriptor()), tokens);
+                    tokens.add(WHITESPACE, " ");
+
+                    // field name
+                    tokens.add(MEMBER_NAME, field.getName());
+
+                    tokens.add(PUNCTUATION, ";");
+                    tokens.add(NEW_LINE, "");
+                });
+
+        // constructors
+        classFile.getMethods().stream()
+                .filter(method -> method.isConstructor() && !method.isSynthetic())
+                .forEach(constructor ->  {
+                    // modifiers
+                    boolean isPublicAPI = getModifiers(constructor.getAccessFlags(), tokens);
+                    if (!isPublicAPI) {
+                        return;
+                    }
+
+                    // constructor name
+                    final TypeSignature.MethodSignature descriptor = TypeSignature.parseMethod(constructor.getDescriptor());
+                    String definitionId = makeDefinitionId(Modifier.constructorModifiers() & constructor.getAccessFlags(),
+                            false, null, declaringTypeName, descriptor, constructor).replaceAll(" ", "-");
+                    tokens.add(MEMBER_NAME, className, definitionId);
+
+                    // opening brace
+                    tokens.add(PUNCTUATION, "(");
+
+                    // parameters
+                    getParameters(constructor, descriptor, tokens);
+
+                    // closing brace and new line
+                    tokens.add(PUNCTUATION, ")");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "{");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "}");
+                    tokens.add(NEW_LINE, "");
+                });
+
+        // methods
+        classFile.getMethods().stream()
+                .filter(method -> !method.isConstructor() && !method.isStaticInitializer() && !method.isSynthetic())
+                .sorted(Comparator.comparing(MemberInfo::getName))
+                .forEach(method -> {
+                    // modifiers
+                    boolean isPublicAPI = getModifiers(method.getAccessFlags(), tokens);
+                    if (!isPublicAPI) {
+                        return;
+                    }
+
+                    // return type
+                    final TypeSignature.MethodSignature descriptor = TypeSignature.parseMethod(method.getDescriptor());
+                    final TypeSignature.MethodSignature signature = method.getSignature() == null
+                            ? descriptor : TypeSignature.parseMethod(method.getSignature());
+                    getType(signature.getReturnType(), tokens);
+                    tokens.add(WHITESPACE, " ");
+
+                    // method name
+                    final boolean isDefault = classFile.isInterface() && isPublic(method.getAccessFlags())
+                            && !isAbstract(method.getAccessFlags()) && !isStatic(method.getAccessFlags());
+                    String definitionId = makeDefinitionId(Modifier.methodModifiers() & method.getAccessFlags(),
+                            isDefault, descriptor.getReturnType(), declaringTypeName + "." + method.getName(),
+                            descriptor, method).replaceAll(" ", "-");
+                    tokens.add(MEMBER_NAME, method.getName(), definitionId);
+
+                    // opening brace
+                    tokens.add(PUNCTUATION, "(");
+
+                    // parameters
+                    getParameters(method, descriptor, tokens);
+
+                    // closing brace and new line
+                    tokens.add(PUNCTUATION, ")");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "{");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "}");
+                    tokens.add(NEW_LINE, "");
+                });
+
+        // handle enclosed classes, passing in child navigation as we go deeper
+        for (final InnerClassInfo innerClass : classFile.getInnerClasses()) {
+            if (!classFile.getName().equals(innerClass.getOuterName()) || !isPublic(innerClass.getAccessFlags())) {
+                continue;
+            }
+            final ClassFile memberClass = classFiles.get(innerClass.getName());
+            if (memberClass != null) {
+                getClassAPI(memberClass, tokens, classNav);
+            }
+        }
+
+        // close class
+        tokens.add(PUNCTUATION, "}");
+        tokens.add(NEW_LINE, "");
+
+        unindent();
+
+        return true;
+    }
+
+    private boolean getModifiers(int modifiers, TokenBuffer tokens) {
+        // abort - we only care about public and protected methods
+        if (isHidden(modifiers)) {
+            return false;
+        }
+
+        // indentation
+        tokens.add(WHITESPACE, makeWhitespace());
+
+        if (isPublic(modifiers)) {
+            tokens.add(KEYWORD, "public");
+        } else if (isProtected(modifiers)) {
+            tokens.add(KEYWORD, "protected");
+        }
+
+        tokens.add(WHITESPACE, " ");
+
+        if (isAbstract(modifiers)) {
+            tokens.add(KEYWORD, "abstract");
+            tokens.add(WHITESPACE, " ");
+        }
+        if (isFinal(modifiers)) {
+            tokens.add(KEYWORD, "final");
+            tokens.add(WHITESPACE, " ");
+        }
+        if (isStatic(modifiers)) {
+            tokens.add(KEYWORD, "static");
+            tokens.add(WHITESPACE, " ");
+        }
+
+        return true;
+    }
+
+    private void getParameters(MemberInfo method, TypeSignature.MethodSignature descriptor, TokenBuffer tokens) {
+        // the generic signature leaves out parameters the compiler adds, such as the outer instance of an inner class
+        // constructor, in which case the erased types of the descriptor are used, as reflection does
+        List<TypeSignature> parameterTypes = descriptor.getParameterTypes();
+        if (method.getSignature() != null) {
+            final List<TypeSignature> genericParameterTypes = TypeSignature.parseMethod(method.getSignature()).getParameterTypes();
+            if (genericParameterTypes.size() == parameterTypes.size()) {
+                parameterTypes = genericParameterTypes;
+            }
+        }
+
+        // without MethodParameters the names are not in the class file, so they are made up the same way reflection does
+        final List<String> parameterNames = method.getParameterNames();
+        final boolean hasNames = parameterNames != null && parameterNames.size() == parameterTypes.size();
+
+        for(int i = 0; i < parameterTypes.size(); i++) {
+            getType(parameterTypes.get(i), tokens);
+            tokens.add(WHITESPACE, " ");
+            tokens.add(TEXT, hasNames && parameterNames.get(i) != null ? parameterNames.get(i) : "arg" + i);
+
+            // add comma and space until the last parameter
+            if (i < parameterTypes.size() - 1) {
+                tokens.add(PUNCTUATION, ",");
+                tokens.add(WHITESPACE, " ");
+            }
+        }
+    }
+
+    private void getType(TypeSignature type, TokenBuffer tokens) {
+        switch (type.getKind()) {
+            case CLASS:
+                final String typeName = type.getSimpleName();
+                tokens.add(TYPE_NAME, typeName, null, knownTypes.get(type.getName()));
+
+                final List<TypeSignature> typeArguments = type.getTypeArguments();
+                if (!typeArguments.isEmpty()) {
+                    tokens.add(PUNCTUATION, "<");
+                    for (int i = 0; i < typeArguments.size(); i++) {
+                        getType(typeArguments.get(i), tokens);
+
+                        // add comma and space until the last parameter
+                        if (i < typeArguments.size() - 1) {
+                            tokens.add(PUNCTUATION, ",");
+                            tokens.add(WHITESPACE, " ");
+                        }
+                    }
+                    tokens.add(PUNCTUATION, ">");
+                }
+                break;
+            case PRIMITIVE:
+                tokens.add(TYPE_NAME, type.getName());
+                break;
+            case ARRAY:
+                getType(type.getComponentType(), tokens);
+                tokens.add(PUNCTUATION, "[]");
+                break;
+            case TYPE_VARIABLE:
+                tokens.add(TYPE_NAME, type.getName());
+                break;
+            case WILDCARD:
+                tokens.add(TYPE_NAME, "?");
+                if (type.getComponentType() != null) {
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(KEYWORD, type.getWildcardKind() == '+' ? "extends" : "super");
+                    tokens.add(WHITESPACE, " ");
+                    getType(type.getComponentType(), tokens);
+                }
+                break;
+        }
+    }
+
+    private TypeKind getTypeKind(ClassFile classFile) {
+        if (classFile.isEnum()) {
+            return TypeKind.ENUM;
+        } else if (classFile.isInterface()) {
+            return TypeKind.INTERFACE;
+        } else {
+            return TypeKind.CLASS;
+        }
+    }
+
+    /**
+     * Builds the same string as {@link java.lang.reflect.Method#toString()} and
+     * {@link java.lang.reflect.Constructor#toString()}, from which the reflective analyser derives its definition ids.
+     */
+    private String makeDefinitionId(int modifiers, boolean isDefault, TypeSignature returnType, String name,
+                                    TypeSignature.MethodSignature descriptor, MemberInfo method) {
+        final StringBuilder sb = new StringBuilder();
+        if (modifiers != 0) {
+            sb.append(Modifier.toString(modifiers)).append(' ');
+        }
+        if (isDefault) {
+            sb.append("default ");
+        }
+        if (returnType != null) {
+            sb.append(returnType.getTypeName()).append(' ');
+        }
+        sb.append(name);
+
+        sb.append('(');
+        sb.append(descriptor.getParameterTypes().stream().map(TypeSignature::getTypeName).collect(Collectors.joining(",")));
+        sb.append(')');
+
+        if (!method.getExceptions().isEmpty()) {
+            sb.append(" throws ");
+            sb.append(method.getExceptions().stream().map(exception -> exception.replace('/', '.')).collect(Collectors.joining(",")));
+        }
+        return sb.toString();
+    }
+
+    private void indent() {
+        indent += 4;
+    }
+
+    private void unindent() {
+        indent = Math.max(indent - 4, 0);
+    }
+
+    private String makeWhitespace() {
+        return Indentation.of(indent);
+    }
+
+    // whether a class or member with the given modifiers is left out of the listing - protected ones are only listed
+    // when the rules allow them
+    private boolean isHidden(int modifiers) {
+        return ! (isPublic(modifiers) || (isProtected(modifiers) && !rules.isPublicOnly()));
+    }
+
+    private boolean isIncluded(ClassFile classFile) {
+        return rules.includesType(classFile.getName().replace('/', '.').replace('$', '.'));
+    }
+
+    private String makeId(ClassFile classFile) {
+        return classFile.getCanonicalName().replaceAll(" ", "-");
+    }
+}
@@ -0,0 +1,128 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import com.github.javaparser.resolution.SymbolResolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the declarations of types by name for the symbol solver - in the sources being analysed, then in the jars of
+ * the classpath, then in the JRE - and remembers what it found, so that each name is only looked for once however many
+ * files and threads ask for it. Without this, the same names are looked for over and over: every unknown name is
+ * searched for in every jar, and the symbol solver asks for each name many times while resolving a single type.
+ *
+ * <p>The names that are not found are remembered too, as they are the most expensive to look for. Only the most
+ * recently used names are kept, so that the cache does not grow without bound on a large classpath.</p>
+ */
+final class CachingTypeSolver implements TypeSolver {
+    static final int DEFAULT_MAXIMUM_SIZE = 64 * 1024;
+
+    private final TypeSolver delegate;
+
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private TypeSolver parent;
+
+    private CachingTypeSolver(TypeSolver delegate, int maximumSize) {
+        this.delegate = delegate;
+        // least recently used names are dropped first
+        this.cache = new LinkedHashMap<String, SymbolReference<ResolvedReferenceTypeDeclaration>>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SymbolReference<ResolvedReferenceTypeDeclaration>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+
+        // the solvers below find the supertypes of what they solve through their root, which is now this cache
+        delegate.setParent(this);
+    }
+
+    /**
+     * Creates a solver for the sources under the given directory, with the given jars as their classpath.
+     */
+    static CachingTypeSolver create(Path sourceRoot, List<Path> classpath, int maximumSize) throws IOException {
+        final CombinedTypeSolver combined = new CombinedTypeSolver();
+        combined.add(new JavaParserTypeSolver(sourceRoot));
+        for (final Path jar : classpath) {
+            combined.add(new JarTypeSolver(jar));
+        }
+        combined.add(new ReflectionTypeSolver());
+        return new CachingTypeSolver(combined, maximumSize);
+    }
+
+    /**
+     * Returns a symbol resolver that finds types with this solver, to be set on the parser configuration.
+     */
+    SymbolResolver toSymbolResolver() {
+        return new JavaSymbolSolver(this);
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        synchronized (cache) {
+            final SymbolReference<ResolvedReferenceTypeDeclaration> cached = cache.get(name);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // the solvers below are not safe to use from more than one thread - the source solver shares one parser - so
+        // only one name is looked for at a time. Another thread may have found the name while this one waited
+        synchronized (delegate) {
+            synchronized (cache) {
+                final SymbolReference<ResolvedReferenceTypeDeclaration> cached = cache.get(name);
+                if (cached != null) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+            }
+
+            misses.incrementAndGet();
+            final SymbolReference<ResolvedReferenceTypeDeclaration> solved = delegate.tryToSolveType(name);
+            synchronized (cache) {
+                cache.put(name, solved);
+            }
+            return solved;
+        }
+    }
+
+    /**
+     * The number of names found in the cache.
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of names that were looked for because they were not in the cache.
+     */
+    long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,67 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import net.jonathangiles.tools.apilisting.cache.Digests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The types declared in the dependency jars of the sources being analysed, searched in classpath order.
+ */
+final class ClasspathIndex {
+    private final JarTypeIndex[] jars;
+
+    private ClasspathIndex(JarTypeIndex[] jars) {
+        this.jars = jars;
+    }
+
+    /**
+     * Opens the index of every given jar, building and storing in the given directory the index of any jar that has
+     * not been indexed before.
+     */
+    static ClasspathIndex open(List<Path> classpath, Path indexDirectory) throws IOException {
+        final List<JarTypeIndex> jars = new ArrayList<>(classpath.size());
+        for (final Path jar : classpath) {
+            jars.add(JarTypeIndex.open(jar, indexDirectory));
+        }
+        return new ClasspathIndex(jars.toArray(new JarTypeIndex[0]));
+    }
+
+    /**
+     * The SHA-256 of the digests of the content of the jars, in classpath order, which changes whenever any of the jars
+     * does.
+     */
+    String getDigest() {
+        final StringBuilder digests = new StringBuilder();
+        for (final JarTypeIndex jar : jars) {
+            digests.append(jar.getDigest()).append('\n');
+        }
+        return Digests.sha256(digests.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The number of types in all of the jars.
+     */
+    int size() {
+        int size = 0;
+        for (final JarTypeIndex jar : jars) {
+            size += jar.size();
+        }
+        return size;
+    }
+
+    /**
+     * Whether any of the jars declares a type with the given simple name directly within the given package or type.
+     */
+    boolean contains(String enclosingName, String simpleName) {
+        for (final JarTypeIndex jar : jars) {
+            if (jar.contains(enclosingName, simpleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
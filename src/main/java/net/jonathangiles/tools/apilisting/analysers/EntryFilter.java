@@ -0,0 +1,122 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which entries of a jar file an analyser reads, from the entry names alone. The jar is walked with the filter
+ * of the analyser, so that the entries it would throw away are never handed to it, and a directory that no accepted
+ * entry can be in is not walked at all.
+ *
+ * <p>A filter is created once per analyser, and testing a name against it is a few string comparisons. A filter with
+ * {@link ListingRules} also rejects the files of the types the rules do not list, and the directories of the packages
+ * they list nothing in.</p>
+ */
+public final class EntryFilter {
+    /**
+     * Accepts every entry.
+     */
+    public static final EntryFilter ALL =
+            new EntryFilter(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+    // an entry is accepted if its name ends with one of the suffixes, or with anything if there are none
+    private final String[] suffixes;
+
+    // an entry is rejected if its file name is one of these
+    private final String[] excludedFileNames;
+
+    // an entry, or a directory and everything within it, is rejected if its path contains one of these
+    private final String[] excludedSubstrings;
+
+    // the rules that the type of an entry, and the package of a directory, must be listed by - null for none
+    private final ListingRules rules;
+
+    /**
+     * Creates a filter that accepts the files whose name ends with one of the given suffixes, or with anything if none
+     * are given, unless their file name is one of the given file names or their path contains one of the given strings.
+     * Directories whose path contains one of the given strings are not walked.
+     */
+    public EntryFilter(List<String> suffixes, List<String> excludedFileNames, List<String> excludedSubstrings) {
+        this.suffixes = suffixes.toArray(new String[0]);
+        this.excludedFileNames = excludedFileNames.toArray(new String[0]);
+        this.excludedSubstrings = excludedSubstrings.toArray(new String[0]);
+        this.rules = null;
+    }
+
+    private EntryFilter(EntryFilter filter, ListingRules rules) {
+        this.suffixes = filter.suffixes;
+        this.excludedFileNames = filter.excludedFileNames;
+        this.excludedSubstrings = filter.excludedSubstrings;
+        this.rules = rules;
+    }
+
+    /**
+     * Returns a filter that also rejects the files of the types that the given rules do not list, taking the type of a
+     * file from its path, and the directories of the packages that the rules list nothing in.
+     */
+    public EntryFilter withRules(ListingRules rules) {
+        return rules == ListingRules.DEFAULT ? this : new EntryFilter(this, rules);
+    }
+
+    /**
+     * Whether the file with the given path is read by the analyser.
+     */
+    public boolean accept(String path) {
+        final String suffix = suffixes.length == 0 ? "" : findSuffix(path, suffixes);
+        if (suffix == null) {
+            return false;
+        }
+        final int fileNameStart = path.lastIndexOf('/') + 1;
+        for (final String excludedFileName : excludedFileNames) {
+            if (path.length() - fileNameStart == excludedFileName.length() && path.startsWith(excludedFileName, fileNameStart)) {
+                return false;
+            }
+        }
+        if (containsAny(path, excludedSubstrings)) {
+            return false;
+        }
+
+        // '/com/azure/Outer$Inner.class' is the type com.azure.Outer.Inner
+        return rules == null || rules.includesType(
+                path.substring(nameStart(path), path.length() - suffix.length()).replace('/', '.').replace('$', '.'));
+    }
+
+    /**
+     * Whether the directory with the given path may contain files that are read by the analyser.
+     */
+    public boolean acceptDirectory(String path) {
+        if (containsAny(path, excludedSubstrings)) {
+            return false;
+        }
+        if (rules == null) {
+            return true;
+        }
+
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        final int start = Math.min(nameStart(path), end);
+        return rules.mayIncludePackage(path.substring(start, end).replace('/', '.'));
+    }
+
+    // the paths of a jar file system start with a '/', which is not part of the name of the type or package
+    private static int nameStart(String path) {
+        return path.startsWith("/") ? 1 : 0;
+    }
+
+    private static String findSuffix(String path, String[] suffixes) {
+        for (final String suffix : suffixes) {
+            if (path.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsAny(String path, String[] substrings) {
+        for (final String substring : substrings) {
+            if (path.contains(substring)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,299 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.Tags;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.model.TokenKind;
+import net.jonathangiles.tools.apilisting.model.TypeKind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The state that {@link ASTAnalyser} keeps between incremental runs. For every source file it records a digest of the
+ * file's content, its package and imports, the types the file contributes to the type index, and the tokens and navigation it produced, along
+ * with every type name that was looked up while tokenising it. A file whose digest is unchanged does not need to be
+ * parsed to rebuild the type index, and its tokens can be reused as long as every type name it looked up still
+ * resolves to the same id from within the file.
+ *
+ * <p>The state is stored as a gzipped binary file. A state file that is missing, corrupt or written by a different
+ * format version is treated as empty, so the next run simply analyses every file again. So is a state file written
+ * with other options that change the types or tokens of a file - other listing rules, another way of resolving type
+ * names or other dependency jars.</p>
+ */
+class IncrementalState {
+    private static final int MAGIC = 0x41504c49; // 'APLI'
+    private static final int FORMAT_VERSION = 3;
+    private static final TokenKind[] TOKEN_KINDS = TokenKind.values();
+
+    private final Map<String, Entry> entries;
+
+    private IncrementalState(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the entry of the given source file, or null if the file was not part of the previous run.
+     */
+    Entry get(String source) {
+        return entries.get(source);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static class Entry {
+        final String digest;
+        final String packageName;
+        final List<String> imports;
+        final List<ASTAnalyser.ScanType> types;
+        final Map<String, String> lookups;
+        final TokenBuffer tokens;
+        final List<ASTAnalyser.PackageNav> packageNavs;
+
+        Entry(String digest, String packageName, List<String> imports, List<ASTAnalyser.ScanType> types,
+              Map<String, String> lookups, TokenBuffer tokens, List<ASTAnalyser.PackageNav> packageNavs) {
+            this.digest = digest;
+            this.packageName = packageName;
+            this.imports = imports;
+            this.types = types;
+            this.lookups = lookups;
+            this.tokens = tokens;
+            this.packageNavs = packageNavs;
+        }
+
+        /**
+         * Whether every type name that was looked up when these tokens were produced still resolves to the same id.
+         */
+        boolean isTokensValid(TypeIndex.Resolver resolver) {
+            for (final Map.Entry<String, String> lookup : lookups.entrySet()) {
+                if (!Objects.equals(resolver.resolve(lookup.getKey()), lookup.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the state from the given file, ignoring it if it was written with options other than those with the given
+     * key.
+     */
+    static IncrementalState read(Path file, String optionsKey) {
+        final Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                System.err.println("Ignoring incremental state '" + file + "' as it has an unknown format");
+                return new IncrementalState(entries);
+            }
+            if (!optionsKey.equals(readString(in))) {
+                System.err.println("Ignoring incremental state '" + file + "' as it was written with other options");
+                return new IncrementalState(entries);
+            }
+
+            while (in.readBoolean()) {
+                final String source = readString(in);
+                entries.put(source, readEntry(in));
+            }
+        } catch (NoSuchFileException e) {
+            // first run - there is no previous state
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring incremental state '" + file + "' as it cannot be read: " + e);
+            entries.clear();
+        }
+        return new IncrementalState(entries);
+    }
+
+    /**
+     * Writes the state of a run one entry at a time, so that the entries do not need to be held in memory. The state
+     * file is only replaced once the writer is committed - a writer that is closed without being committed, as when
+     * the run fails part way through, discards what it wrote and leaves the previous state in place.
+     */
+    static class Writer implements Closeable {
+        private final Path file;
+        private final Path temp;
+        private final DataOutputStream out;
+        private boolean committed;
+
+        Writer(Path file, String optionsKey) throws IOException {
+            this.file = file.toAbsolutePath();
+            Files.createDirectories(this.file.getParent());
+            this.temp = Files.createTempFile(this.file.getParent(), this.file.getFileName().toString(), ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, optionsKey);
+        }
+
+        void write(String source, Entry entry) throws IOException {
+            out.writeBoolean(true);
+            writeString(out, source);
+            writeEntry(out, entry);
+        }
+
+        /**
+         * Completes the state and replaces the state file with it, once every file of the run has been written.
+         */
+        void commit() throws IOException {
+            out.writeBoolean(false);
+            out.close();
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    out.close();
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeString(out, entry.digest);
+        writeString(out, entry.packageName);
+
+        out.writeInt(entry.imports.size());
+        for (final String importName : entry.imports) {
+            writeString(out, importName);
+        }
+
+        out.writeInt(entry.types.size());
+        for (final ASTAnalyser.ScanType type : entry.types) {
+            writeString(out, type.typeName);
+            writeString(out, type.packageName);
+            writeString(out, type.fullQualifiedName);
+        }
+
+        out.writeInt(entry.lookups.size());
+        for (final Map.Entry<String, String> lookup : entry.lookups.entrySet()) {
+            writeString(out, lookup.getKey());
+            writeString(out, lookup.getValue());
+        }
+
+        final TokenBuffer tokens = entry.tokens;
+        out.writeInt(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            out.writeByte(tokens.getKind(i).ordinal());
+            writeString(out, tokens.getValue(i));
+            writeString(out, tokens.getDefinitionId(i));
+            writeString(out, tokens.getNavigateToId(i));
+        }
+
+        out.writeInt(entry.packageNavs.size());
+        for (final ASTAnalyser.PackageNav packageNav : entry.packageNavs) {
+            writeString(out, packageNav.packageName);
+            writeNavigation(out, packageNav.nav);
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        final String digest = readString(in);
+        final String packageName = readString(in);
+
+        final int importCount = in.readInt();
+        final List<String> imports = new ArrayList<>(importCount);
+        for (int i = 0; i < importCount; i++) {
+            imports.add(readString(in));
+        }
+
+        final int typeCount = in.readInt();
+        final List<ASTAnalyser.ScanType> types = new ArrayList<>(typeCount);
+        for (int i = 0; i < typeCount; i++) {
+            types.add(new ASTAnalyser.ScanType(readString(in), readString(in), readString(in)));
+        }
+
+        final int lookupCount = in.readInt();
+        final Map<String, String> lookups = new HashMap<>();
+        for (int i = 0; i < lookupCount; i++) {
+            lookups.put(readString(in), readString(in));
+        }
+
+        final int tokenCount = in.readInt();
+        final TokenBuffer tokens = new TokenBuffer();
+        for (int i = 0; i < tokenCount; i++) {
+            final TokenKind kind = TOKEN_KINDS[in.readByte()];
+            tokens.add(kind, readString(in), readString(in), readString(in));
+        }
+
+        final int packageNavCount = in.readInt();
+        final List<ASTAnalyser.PackageNav> packageNavs = new ArrayList<>(packageNavCount);
+        for (int i = 0; i < packageNavCount; i++) {
+            packageNavs.add(new ASTAnalyser.PackageNav(readString(in), readNavigation(in)));
+        }
+
+        return new Entry(digest, packageName, imports, types, lookups, tokens, packageNavs);
+    }
+
+    private static void writeNavigation(DataOutputStream out, ChildItem nav) throws IOException {
+        writeString(out, nav.getNavigationId());
+        writeString(out, nav.getText());
+        writeString(out, nav.getTags() == null ? null : nav.getTags().getTypeKind().name());
+
+        out.writeInt(nav.getChildItem().size());
+        for (final ChildItem child : nav.getChildItem()) {
+            writeNavigation(out, child);
+        }
+    }
+
+    private static ChildItem readNavigation(DataInputStream in) throws IOException {
+        final ChildItem nav = new ChildItem(readString(in), readString(in));
+        final String typeKind = readString(in);
+        if (typeKind != null) {
+            nav.setTags(new Tags(TypeKind.valueOf(typeKind)));
+        }
+
+        final int childCount = in.readInt();
+        for (int i = 0; i < childCount; i++) {
+            nav.addChildItem(readNavigation(in));
+        }
+        return nav;
+    }
+
+    // strings are written as a length followed by UTF-8 bytes, rather than with writeUTF, which is limited to 64KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
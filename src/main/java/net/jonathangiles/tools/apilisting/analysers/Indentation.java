@@ -0,0 +1,40 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.util.Arrays;
+
+/**
+ * The whitespace that indents each line of a listing. Every line starts with one, so rather than building a new string
+ * per line the strings for the usual depths are built once and shared.
+ */
+final class Indentation {
+    // indentation grows four spaces at a time, so this covers sixteen levels of nesting
+    private static final int CACHED_WIDTHS = 64;
+
+    private static final String[] CACHE = new String[CACHED_WIDTHS + 1];
+    static {
+        final char[] spaces = new char[CACHED_WIDTHS];
+        Arrays.fill(spaces, ' ');
+        for (int width = 0; width <= CACHED_WIDTHS; width++) {
+            CACHE[width] = new String(spaces, 0, width);
+        }
+    }
+
+    private Indentation() {
+        // static helpers only
+    }
+
+    /**
+     * Returns a string of the given number of spaces.
+     */
+    static String of(int width) {
+        if (width <= CACHED_WIDTHS) {
+            return CACHE[width];
+        }
+
+        final StringBuilder sb = new StringBuilder(width);
+        for (int i = 0; i < width; i++) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+}
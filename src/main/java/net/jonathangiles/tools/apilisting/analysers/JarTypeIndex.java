@@ -0,0 +1,354 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import net.jonathangiles.tools.apilisting.analysers.bytecode.ClassFile;
+import net.jonathangiles.tools.apilisting.cache.Digests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The names of the public and protected types of a dependency jar, by fully qualified name. The index of a jar is
+ * built from its class files the first time the jar is seen, and kept in a file named after the path, size and last
+ * modified time of the jar, so that later runs against the same jar only look up its file attributes and map that
+ * file into memory. A jar that is replaced by another of the same size and modified time is not noticed. The file is
+ * laid out as:
+ *
+ * <ul>
+ *     <li>a header - the {@link #MAGIC}, the format version, the number of types and the number of slots, as ints,
+ *     then the SHA-256 of the content of the jar as 64 hex digits, one byte each</li>
+ *     <li>the slots - a hash table of the offset of each type in the file, or zero for an empty slot, as ints. A type
+ *     is in the first free slot at or after the one its name hashes to</li>
+ *     <li>the types - each as the hash of its name as an int, then its name</li>
+ * </ul>
+ *
+ * <p>Counts and lengths are unsigned varints, and names are encoded one UTF-16 character at a time in one to three
+ * bytes, as in {@link net.jonathangiles.tools.apilisting.output.BinaryListingWriter}. A name is compared with the
+ * one being looked up as it is decoded, so a lookup reads the mapped file in place and creates no objects.</p>
+ */
+final class JarTypeIndex {
+    static final int MAGIC = 0x41504c54; // "APLT"
+    static final int FORMAT_VERSION = 3;
+
+    private static final int DIGEST_OFFSET = 16;
+    private static final int DIGEST_LENGTH = 64;
+    private static final int HEADER_SIZE = DIGEST_OFFSET + DIGEST_LENGTH;
+    private static final String FILE_SUFFIX = ".types";
+
+    private final String digest;
+    private final ByteBuffer buffer;
+    private final int slotMask;
+
+    private JarTypeIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a type index, or one of an unknown format version");
+        }
+        final int typeCount = buffer.getInt(8);
+        final int slotCount = buffer.getInt(12);
+        if (Integer.bitCount(slotCount) != 1 || HEADER_SIZE + slotCount * 4L > buffer.limit()
+                || typeCount < 0 || typeCount >= slotCount) {
+            throw new IOException("Corrupt type index");
+        }
+
+        // a lookup trusts the slots, so they are checked once here - every offset must point at a type within the file,
+        // and there must be a free slot for a probe to stop at
+        final int typesStart = HEADER_SIZE + slotCount * 4;
+        int usedSlots = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            final int offset = buffer.getInt(HEADER_SIZE + slot * 4);
+            if (offset == 0) {
+                continue;
+            }
+            // the hash of the name and at least one byte of its length
+            if (offset < typesStart || offset > buffer.limit() - 5) {
+                throw new IOException("Corrupt type index, slot " + slot + " is out of bounds");
+            }
+            usedSlots++;
+        }
+        if (usedSlots != typeCount) {
+            throw new IOException("Corrupt type index, expected " + typeCount + " types but found " + usedSlots);
+        }
+
+        final char[] digest = new char[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            digest[i] = (char) buffer.get(DIGEST_OFFSET + i);
+        }
+        this.digest = new String(digest);
+        this.buffer = buffer;
+        this.slotMask = slotCount - 1;
+    }
+
+    /**
+     * Returns the index of the given jar, from the given directory if the jar has been indexed before, or else by
+     * reading the class files of the jar and storing the index in the directory for next time.
+     */
+    static JarTypeIndex open(Path jar, Path indexDirectory) throws IOException {
+        // the content of the jar is only read when it is indexed, so a jar that was indexed before costs a stat
+        final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        final String stamp = jar.toAbsolutePath() + "\n" + attributes.size() + "\n" + attributes.lastModifiedTime().toMillis();
+        final Path indexFile = indexDirectory.resolve(Digests.sha256(stamp.getBytes(StandardCharsets.UTF_8)) + FILE_SUFFIX);
+        if (Files.exists(indexFile)) {
+            try {
+                return map(indexFile);
+            } catch (IOException e) {
+                System.err.println("Rebuilding type index '" + indexFile + "' as it cannot be read: " + e.getMessage());
+            }
+        }
+
+        Files.createDirectories(indexDirectory);
+        final Path temp = Files.createTempFile(indexDirectory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, build(jar));
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return map(indexFile);
+    }
+
+    private static JarTypeIndex map(Path indexFile) throws IOException {
+        // the mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            return new JarTypeIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * The SHA-256 of the content of the jar, as it was when the jar was indexed.
+     */
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * The number of types in the index.
+     */
+    int size() {
+        return buffer.getInt(8);
+    }
+
+    /**
+     * Whether the jar declares a type with the given simple name directly within the given package or type.
+     */
+    boolean contains(String enclosingName, String simpleName) {
+        return find(enclosingName, simpleName) != 0;
+    }
+
+    // the offset of the named type in the file, or zero if there is no such type. The name is the enclosing name and
+    // the simple name joined with a '.'
+    private int find(String enclosingName, String simpleName) {
+        // the same hash as String.hashCode() of the joined name, without joining the names
+        int hash = enclosingName.hashCode() * 31 + '.';
+        for (int i = 0; i < simpleName.length(); i++) {
+            hash = hash * 31 + simpleName.charAt(i);
+        }
+
+        for (int slot = spread(hash) & slotMask; ; slot = (slot + 1) & slotMask) {
+            final int offset = buffer.getInt(HEADER_SIZE + slot * 4);
+            if (offset == 0) {
+                return 0;
+            }
+            if (buffer.getInt(offset) == hash && matches(offset + 4, enclosingName, simpleName)) {
+                return offset;
+            }
+        }
+    }
+
+    private boolean matches(int position, String enclosingName, String simpleName) {
+        // decoded in place, as this is the only part of a lookup that runs per probe
+        int storedLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get(position++);
+            storedLength |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        final int enclosingLength = enclosingName.length();
+        final int length = enclosingLength + 1 + simpleName.length();
+        if (storedLength != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final int b = buffer.get(position++) & 0xFF;
+            final char c;
+            if (b < 0x80) {
+                c = (char) b;
+            } else if (b < 0xE0) {
+                c = (char) (((b & 0x1F) << 6) | (buffer.get(position++) & 0x3F));
+            } else {
+                final int b2 = buffer.get(position++) & 0x3F;
+                c = (char) (((b & 0x0F) << 12) | (b2 << 6) | (buffer.get(position++) & 0x3F));
+            }
+
+            final char expected = i < enclosingLength ? enclosingName.charAt(i)
+                    : i == enclosingLength ? '.'
+                    : simpleName.charAt(i - enclosingLength - 1);
+            if (c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Reads the public and protected types of the given jar, and returns the content of its index file.
+     */
+    static byte[] build(Path jar) throws IOException {
+        // sorted by name, so that the same jar always gives the same index
+        final TreeSet<String> types = new TreeSet<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final String entryName = entry.getName();
+                if (entry.isDirectory() || !entryName.endsWith(".class")
+                        || entryName.endsWith("module-info.class") || entryName.endsWith("package-info.class")) {
+                    continue;
+                }
+
+                final ClassFile classFile;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    classFile = ClassFile.read(in);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Cannot read class file '" + entryName + "' of '" + jar + "': " + e.getMessage());
+                    continue;
+                }
+
+                final int modifiers = classFile.getDeclaredAccessFlags();
+                if ((modifiers & (ClassFile.ACC_PUBLIC | ClassFile.ACC_PROTECTED)) == 0) {
+                    continue;
+                }
+                types.add(classFile.getCanonicalName());
+            }
+        }
+
+        final Writer writer = new Writer();
+        writer.writeInt(MAGIC);
+        writer.writeInt(FORMAT_VERSION);
+        writer.writeInt(types.size());
+
+        // at most half of the slots are used, so that probes stay short
+        final int slotCount = Math.max(2, Integer.highestOneBit(Math.max(1, types.size())) * 4);
+        writer.writeInt(slotCount);
+        final String digest = Digests.sha256(jar);
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            writer.writeByte(digest.charAt(i));
+        }
+        final int slotsStart = writer.size();
+        writer.skip(slotCount * 4);
+
+        final int[] slots = new int[slotCount];
+        for (final String type : types) {
+            final int hash = type.hashCode();
+            int slot = spread(hash) & (slotCount - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            slots[slot] = writer.size();
+
+            writer.writeInt(hash);
+            writer.writeString(type);
+        }
+
+        for (int i = 0; i < slotCount; i++) {
+            writer.setInt(slotsStart + i * 4, slots[i]);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes an index file in memory.
+     */
+    private static final class Writer {
+        private byte[] bytes = new byte[64 * 1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void skip(int count) {
+            ensureCapacity(count);
+            size += count;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            setInt(size, value);
+            size += 4;
+        }
+
+        void setInt(int position, int value) {
+            bytes[position] = (byte) (value >>> 24);
+            bytes[position + 1] = (byte) (value >>> 16);
+            bytes[position + 2] = (byte) (value >>> 8);
+            bytes[position + 3] = (byte) value;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // the length is the number of characters rather than bytes, as names are compared one character at a time
+        void writeString(String value) {
+            writeVarint(value.length());
+            ensureCapacity(value.length() * 3);
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[size++] = (byte) (0xC0 | (c >> 6));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    bytes[size++] = (byte) (0xE0 | (c >> 12));
+                    bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The rules that decide which packages and types are listed, and which of their members. The rules are read from a
+ * file with one rule per line:
+ *
+ * <pre>
+ * # list the storage packages, other than their implementation packages
+ * include com.azure.storage.**
+ * exclude com.azure.storage.*.implementation
+ * exclude regex:com\.azure\.storage\..*Builder
+ * # list public members only, and not protected members
+ * access public
+ * </pre>
+ *
+ * <p>A pattern matches a fully qualified package or type name, and everything within it, as described by
+ * {@link NameMatcher}. A type is listed if it matches an {@code include} pattern, or there are none, and does not match
+ * an {@code exclude} pattern. A type nested within another type is only listed along with it. The {@code access} rule
+ * is the least access a type or member must have to be listed, either {@code public} or {@code protected} (the
+ * default). Blank lines and lines starting with '#' are ignored.</p>
+ *
+ * <p>The rules are applied to the entries of the jar file as it is walked, so that the packages and files that contain
+ * nothing to list are never read, and again to each type as it is declared.</p>
+ */
+public final class ListingRules {
+    /**
+     * Lists every type, and its public and protected members.
+     */
+    public static final ListingRules DEFAULT = new ListingRules();
+
+    private final NameMatcher includes = new NameMatcher();
+    private final NameMatcher excludes = new NameMatcher();
+    private boolean publicOnly;
+
+    // the rules as read, in a canonical form, so that runs with the same rules can be told apart from others
+    private final StringBuilder key = new StringBuilder();
+
+    private ListingRules() {
+    }
+
+    /**
+     * Reads the rules from the given file.
+     *
+     * @throws IOException if the file cannot be read, or a line of it is not a valid rule.
+     */
+    public static ListingRules read(Path file) throws IOException {
+        final ListingRules rules = new ListingRules();
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw new IOException("Expected a rule and a value on line " + (i + 1) + " of '" + file
+                        + "' but found " + fields.length + " fields");
+            }
+            try {
+                switch (fields[0]) {
+                    case "include":
+                        rules.includes.add(fields[1]);
+                        break;
+                    case "exclude":
+                        rules.excludes.add(fields[1]);
+                        break;
+                    case "access":
+                        if (!"public".equals(fields[1]) && !"protected".equals(fields[1])) {
+                            throw new IOException("Unknown access '" + fields[1] + "' on line " + (i + 1) + " of '"
+                                    + file + "', expected 'public' or 'protected'");
+                        }
+                        rules.publicOnly = "public".equals(fields[1]);
+                        break;
+                    default:
+                        throw new IOException("Unknown rule '" + fields[0] + "' on line " + (i + 1) + " of '" + file
+                                + "', expected 'include', 'exclude' or 'access'");
+                }
+            } catch (PatternSyntaxException e) {
+                throw new IOException("Invalid regular expression on line " + (i + 1) + " of '" + file + "': "
+                        + e.getDescription());
+            }
+            rules.key.append(fields[0]).append(' ').append(fields[1]).append('\n');
+        }
+        return rules;
+    }
+
+    /**
+     * Whether the type with the given fully qualified name is listed. The name of a nested type is the name of the
+     * type it is nested within, a dot, and its simple name.
+     */
+    public boolean includesType(String typeName) {
+        return (includes.isEmpty() || includes.matches(typeName)) && !excludes.matches(typeName);
+    }
+
+    /**
+     * Whether any type within the package with the given name, or within its subpackages, may be listed. The unnamed
+     * package is always walked, as it contains every other package.
+     */
+    public boolean mayIncludePackage(String packageName) {
+        if (packageName.isEmpty()) {
+            return true;
+        }
+        return !excludes.matches(packageName) && (includes.isEmpty() || includes.mayMatchWithin(packageName));
+    }
+
+    /**
+     * Whether only public types and members are listed, rather than public and protected ones.
+     */
+    public boolean isPublicOnly() {
+        return publicOnly;
+    }
+
+    /**
+     * The rules in a canonical form, which is the same for any two files with the same rules in the same order.
+     */
+    public String getKey() {
+        return key.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of patterns that package and type names are matched against. A name matches when it, or a name it is within,
+ * matches one of the patterns - so a pattern that matches a package also matches every type and subpackage within it,
+ * and a pattern that matches a type also matches the types nested within it.
+ *
+ * <p>A pattern is either a glob, in which {@code *} matches any part of a name between two dots, {@code **} matches any
+ * part of a name including dots, and {@code ?} matches any one character other than a dot, or a regular expression
+ * prefixed with {@code regex:}. The literal start of every glob is compiled into a trie of characters, so matching a
+ * name walks the trie once along the name, and only the patterns whose literal start the name begins with are tried on
+ * the rest of it. Most names therefore only take a walk of the trie, however many patterns there are.</p>
+ */
+final class NameMatcher {
+    static final String REGEX_PREFIX = "regex:";
+
+    // matches any name that a matched name is within
+    private static final String WITHIN = "(?:\\..*)?";
+
+    private final Node root = new Node();
+
+    // the regular expressions, which have no literal start and are tried on every name
+    private final List<Pattern> regexes = new ArrayList<>();
+
+    private boolean empty = true;
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+
+        // whether a glob ends at this node, so that the name it has been reached by matches
+        private boolean exact;
+
+        // whether a glob ends in ** at this node, so that every name through this node matches
+        private boolean matchAll;
+
+        // the rest of each glob whose literal start ends at this node
+        private final List<Pattern> patterns = new ArrayList<>();
+    }
+
+    /**
+     * Adds a pattern.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is a regular expression that is not valid.
+     */
+    void add(String pattern) {
+        empty = false;
+        if (pattern.startsWith(REGEX_PREFIX)) {
+            regexes.add(Pattern.compile("(?:" + pattern.substring(REGEX_PREFIX.length()) + ")" + WITHIN));
+            return;
+        }
+
+        int literalEnd = 0;
+        while (literalEnd < pattern.length() && pattern.charAt(literalEnd) != '*' && pattern.charAt(literalEnd) != '?') {
+            literalEnd++;
+        }
+
+        Node node = root;
+        for (int i = 0; i < literalEnd; i++) {
+            node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Node());
+        }
+
+        final String rest = pattern.substring(literalEnd);
+        if (rest.isEmpty()) {
+            node.exact = true;
+        } else if (rest.equals("**")) {
+            node.matchAll = true;
+        } else {
+            node.patterns.add(Pattern.compile(globToRegex(rest) + WITHIN));
+        }
+    }
+
+    /**
+     * Whether there are no patterns.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Whether the given name, or a name it is within, matches one of the patterns.
+     */
+    boolean matches(String name) {
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (node.matchAll || node.exact && (i == name.length() || name.charAt(i) == '.')) {
+                return true;
+            }
+            for (final Pattern pattern : node.patterns) {
+                if (pattern.matcher(name).region(i, name.length()).matches()) {
+                    return true;
+                }
+            }
+            if (i == name.length() || (node = node.children.get(name.charAt(i))) == null) {
+                break;
+            }
+        }
+
+        for (final Pattern regex : regexes) {
+            if (regex.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether some name within the given name may match one of the patterns. This may be true when no name does, but
+     * is never false when one does.
+     */
+    boolean mayMatchWithin(String name) {
+        if (matches(name)) {
+            return true;
+        }
+
+        final String prefix = name + '.';
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (node.matchAll) {
+                return true;
+            }
+            for (final Pattern pattern : node.patterns) {
+                if (mayMatchAfter(pattern.matcher(prefix).region(i, prefix.length()))) {
+                    return true;
+                }
+            }
+            if (i == prefix.length()) {
+                // some glob starts with the prefix
+                return true;
+            }
+            if ((node = node.children.get(prefix.charAt(i))) == null) {
+                break;
+            }
+        }
+
+        for (final Pattern regex : regexes) {
+            if (mayMatchAfter(regex.matcher(prefix))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the matcher matches its input, or may do once more is added to the end of it
+    private static boolean mayMatchAfter(Matcher matcher) {
+        return matcher.matches() || matcher.hitEnd();
+    }
+
+    private static String globToRegex(String glob) {
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (literalStart < i) {
+                regex.append(Pattern.quote(glob.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                regex.append("[^.]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^.]*");
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+}
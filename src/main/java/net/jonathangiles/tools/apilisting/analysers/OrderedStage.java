@@ -0,0 +1,151 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * One stage of the analysis pipeline. The stage applies a function to each of its inputs on a pool and hands the
+ * results, in input order, to the next stage - which runs on the calling thread, at the same time as the stage keeps
+ * working on later inputs.
+ *
+ * <p>No more than {@code parallelism} inputs are worked on at once, and no more than {@code queueCapacity} results
+ * are held once finished but not yet taken by the next stage. When the next stage falls behind, this stage stops
+ * starting new work until it catches up, so a slow consumer bounds how much of the jar is held in memory rather than
+ * letting it grow. New work is started as earlier work finishes, so no pool thread ever waits on another.</p>
+ */
+final class OrderedStage<I, O> {
+    /**
+     * The next stage of the pipeline, which receives each result in input order.
+     */
+    interface Consumer<O> {
+        void accept(O output) throws IOException;
+    }
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int window;
+    private final List<I> inputs;
+    private final Function<I, O> function;
+
+    private final Object lock = new Object();
+    private final Object[] results;
+    private final boolean[] done;
+    private int submitted;
+    private int running;
+    private int consumed;
+    private Throwable failure;
+    private boolean stopped;
+
+    // how long the consumer waited for results, which is high when this stage is the slowest in the pipeline
+    private long waitNanos;
+
+    private OrderedStage(ForkJoinPool pool, int parallelism, int queueCapacity, List<I> inputs, Function<I, O> function) {
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.window = parallelism + queueCapacity;
+        this.inputs = inputs;
+        this.function = function;
+        this.results = new Object[inputs.size()];
+        this.done = new boolean[inputs.size()];
+    }
+
+    /**
+     * Applies the function to every input, handing each result to the consumer in input order, and returns how many
+     * milliseconds the consumer spent waiting on this stage.
+     */
+    static <I, O> long run(ForkJoinPool pool, int parallelism, int queueCapacity, List<I> inputs,
+                           Function<I, O> function, Consumer<O> consumer) throws IOException {
+        if (parallelism < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 and the queue capacity at least 0");
+        }
+        final OrderedStage<I, O> stage = new OrderedStage<>(pool, parallelism, queueCapacity, inputs, function);
+        stage.consume(consumer);
+        return stage.waitNanos / 1_000_000;
+    }
+
+    private void consume(Consumer<O> consumer) throws IOException {
+        try {
+            submitMore();
+            for (int i = 0; i < results.length; i++) {
+                consumer.accept(take(i));
+
+                synchronized (lock) {
+                    consumed++;
+                }
+                submitMore();
+            }
+        } finally {
+            // stop starting work if the consumer failed - work already started finishes on its own
+            synchronized (lock) {
+                stopped = true;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private O take(int index) throws IOException {
+        synchronized (lock) {
+            if (!done[index] && failure == null) {
+                final long start = System.nanoTime();
+                try {
+                    while (!done[index] && failure == null) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the pipeline", e);
+                } finally {
+                    waitNanos += System.nanoTime() - start;
+                }
+            }
+
+            if (failure != null) {
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new IOException(failure);
+            }
+
+            final O result = (O) results[index];
+            // drop the reference, so that the result can be collected once the consumer is done with it
+            results[index] = null;
+            return result;
+        }
+    }
+
+    private void submitMore() {
+        synchronized (lock) {
+            while (!stopped && failure == null && submitted < results.length && running < parallelism
+                    && submitted - consumed < window) {
+                final int index = submitted++;
+                running++;
+                pool.execute(() -> work(index));
+            }
+        }
+    }
+
+    private void work(int index) {
+        Object result = null;
+        Throwable error = null;
+        try {
+            result = function.apply(inputs.get(index));
+        } catch (Throwable e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            running--;
+            results[index] = result;
+            done[index] = true;
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            lock.notifyAll();
+        }
+        submitMore();
+    }
+}
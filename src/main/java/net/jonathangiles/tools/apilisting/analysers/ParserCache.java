@@ -0,0 +1,62 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.resolution.SymbolResolver;
+
+/**
+ * A parser for each thread that parses source files, all with the same configuration. A parser keeps its generated
+ * parser and the buffers of its token manager from one file to the next, so a thread that parses many files - and, in
+ * batch and daemon mode, the files of many jar files - only creates them once. Parsers are not thread-safe, which is
+ * why each thread has its own.
+ */
+public final class ParserCache {
+    private final boolean signaturesOnly;
+    private final ParserConfiguration configuration;
+    private final ThreadLocal<JavaParser> parsers;
+
+    /**
+     * Creates the parsers of the {@link ASTAnalyser}. When signatures only is true, files are parsed for their
+     * declarations only - comments are not attributed to nodes and the token stream is not kept.
+     */
+    public ParserCache(boolean signaturesOnly) {
+        this(signaturesOnly, null);
+    }
+
+    private ParserCache(boolean signaturesOnly, SymbolResolver symbolResolver) {
+        this.signaturesOnly = signaturesOnly;
+        this.configuration = new ParserConfiguration();
+        if (signaturesOnly) {
+            // the listing never prints comments and never needs the token stream, so we skip the cost of keeping them
+            configuration.setAttributeComments(false);
+            configuration.setStoreTokens(false);
+        }
+        if (symbolResolver != null) {
+            configuration.setSymbolResolver(symbolResolver);
+        }
+        this.parsers = ThreadLocal.withInitial(() -> new JavaParser(configuration));
+    }
+
+    /**
+     * Returns parsers with the same configuration as these, whose compilation units resolve their types with the given
+     * symbol resolver. The symbol resolver belongs to a single analysis, so these parsers are left as they are for
+     * the others.
+     */
+    ParserCache withSymbolResolver(SymbolResolver symbolResolver) {
+        return new ParserCache(signaturesOnly, symbolResolver);
+    }
+
+    /**
+     * Whether files are parsed for their declarations only.
+     */
+    boolean isSignaturesOnly() {
+        return signaturesOnly;
+    }
+
+    /**
+     * Returns the parser of the calling thread.
+     */
+    JavaParser get() {
+        return parsers.get();
+    }
+}
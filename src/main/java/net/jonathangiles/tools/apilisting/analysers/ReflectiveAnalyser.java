@@ -1,11 +1,14 @@
 package net.jonathangiles.tools.apilisting.analysers;
 
-import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.metrics.Metrics;
 import net.jonathangiles.tools.apilisting.model.ChildItem;
-import net.jonathangiles.tools.apilisting.model.Token;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
 import net.jonathangiles.tools.apilisting.model.TypeKind;
+import net.jonathangiles.tools.apilisting.sinks.NavigationSink;
+import net.jonathangiles.tools.apilisting.sinks.TokenSink;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -16,7 +19,9 @@ import java.lang.reflect.TypeVariable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -39,24 +44,67 @@ import static net.jonathangiles.tools.apilisting.model.TokenKind.TEXT;
 import static net.jonathangiles.tools.apilisting.model.TokenKind.TYPE_NAME;
 import static net.jonathangiles.tools.apilisting.model.TokenKind.WHITESPACE;
 
+// metrics phases are only opened to time the try block they belong to, and are never referenced within it
+@SuppressWarnings("try")
 public class ReflectiveAnalyser implements Analyser {
+    // class files outside of implementation packages
+    private static final EntryFilter ENTRY_FILTER = new EntryFilter(
+            Collections.singletonList(".class"),
+            Collections.emptyList(),
+            Collections.singletonList("implementation"));
+
     private int indent = 0;
 
-    // maps from a class simple name to the id generated with makeId(Class)
-    private final Map<String, String> knownTypes;
+    // maps from a class to the id generated with makeId(Class) - keyed by the class itself rather than its name, so
+    // that classes with the same simple name in different packages are linked to their own declarations
+    private final Map<Class<?>, String> knownTypes;
+
+    private Metrics metrics = Metrics.disabled();
+
+    // the rules that decide which classes and members are listed, and the filter of the jar entries that applies them
+    private ListingRules rules = ListingRules.DEFAULT;
+    private EntryFilter entryFilter = ENTRY_FILTER;
+
+    // the dependency jars that the classes of the jar are loaded with
+    private List<Path> classpath = Collections.emptyList();
 
     public ReflectiveAnalyser() {
         this.knownTypes = new HashMap<>();
     }
 
-    public void analyse(List<Path> allFiles, File tempDir, APIListing apiListing) {
-        // we build a custom classloader so that we can load classes that were not on the classpath
-        String rootDirectory = tempDir.getPath();
+    @Override
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the dependency jars of the jar being analysed, so that its classes can be loaded when their signatures
+     * refer to the types of a dependency.
+     */
+    public void setClasspath(List<Path> classpath) {
+        this.classpath = classpath;
+    }
 
+    @Override
+    public void setRules(ListingRules rules) {
+        this.rules = rules;
+        this.entryFilter = ENTRY_FILTER.withRules(rules);
+    }
+
+    @Override
+    public EntryFilter getEntryFilter() {
+        return entryFilter;
+    }
+
+    public void analyse(List<Path> allFiles, File inputFile, TokenSink tokenSink, NavigationSink navigationSink) throws IOException {
+        // we build a custom classloader over the jar file so that we can load classes that were not on the classpath
         ClassLoader classLoader = null;
         try {
-            URL url = new File(rootDirectory).toURI().toURL();
-            URL[] urls = new URL[] {url};
+            URL[] urls = new URL[classpath.size() + 1];
+            urls[0] = inputFile.toURI().toURL();
+            for (int i = 0; i < classpath.size(); i++) {
+                urls[i + 1] = classpath.get(i).toUri().toURL();
+            }
             classLoader = URLClassLoader.newInstance(urls);
         } catch (MalformedURLException e) {
             e.printStackTrace();
@@ -65,25 +113,32 @@ public class ReflectiveAnalyser implements Analyser {
         final ClassLoader cl = classLoader;
 
         // firstly we filter out the files we don't care about
-        allFiles = allFiles.stream()
-                .filter(path -> {
-                    File inputFile = path.toFile();
-                    String inputFileName = inputFile.toString();
-                    if (inputFile.isDirectory()) return false;
-                    else if (inputFileName.contains("implementation")) return false;
-                    else if (!inputFileName.endsWith(".class")) return false;
-                    else return true;
-                }).collect(Collectors.toList());
+        final List<Path> classFiles;
+        try (Metrics.Phase phase = metrics.startPhase("filter")) {
+            classFiles = allFiles.stream()
+                    .filter(path -> entryFilter.accept(path.toString()) && !Files.isDirectory(path))
+                    .collect(Collectors.toList());
+        }
 
         // then we do a pass to build a map of all known types,
         // followed by a pass to tokenise each file
-        allFiles.stream()
-                .map(path -> scanForTypes(path, cl))
-                .collect(Collectors.toList())
-                .stream()
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .forEach(scanClass -> processSingleFile(scanClass, apiListing));
+        final List<ScanClass> scanClasses;
+        try (Metrics.Phase phase = metrics.startPhase("type-scan")) {
+            scanClasses = classFiles.stream()
+                    .map(path -> scanForTypes(path, cl))
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
+        }
+
+        // navigation is pushed as each class completes, so it is part of the tokenize phase
+        try (Metrics.Phase phase = metrics.startPhase("tokenize")) {
+            for (final ScanClass scanClass : scanClasses) {
+                processSingleFile(scanClass, tokenSink, navigationSink);
+            }
+        }
+
+        metrics.addCount("files", scanClasses.size());
     }
 
     private static class ScanClass {
@@ -97,14 +152,12 @@ public class ReflectiveAnalyser implements Analyser {
     }
 
     private Optional<ScanClass> scanForTypes(Path path, ClassLoader classLoader) {
-        File inputFile = path.toFile();
-        String inputFileName = inputFile.toString();
-
-        // The input file will look like 'temp/azure-core-1.0.0-preview.4.jar/com/azure/core/exception/ServiceResponseException.class',
+        // The input file will look like '/com/azure/core/exception/ServiceResponseException.class' within the jar file,
         // we want this to be 'com/azure/core/exception/ServiceResponseException.class',
         // which then can become 'com.azure.core.exception.ServiceResponseException'
+        final String inputFileName = path.getRoot().relativize(path).toString();
         final String fqcn = inputFileName
-                .substring(inputFileName.indexOf(".jar/") + 5, inputFileName.length() - 6)
+                .substring(0, inputFileName.length() - 6)
                 .replaceAll("/", ".");
 
         try {
@@ -118,29 +171,34 @@ public class ReflectiveAnalyser implements Analyser {
     }
 
     private boolean scanForTypes(Class<?> cls) {
-        if (! (isPublic(cls.getModifiers()) || isProtected(cls.getModifiers()))) {
+        if (isHidden(cls.getModifiers()) || !isIncluded(cls)) {
             return false;
         }
 
-        knownTypes.put(cls.getSimpleName(), makeId(cls));
+        knownTypes.put(cls, makeId(cls));
 
         Stream.of(cls.getDeclaredClasses()).forEach(this::scanForTypes);
         return true;
     }
 
-    private void processSingleFile(ScanClass scanClass, APIListing apiListing) {
-        File inputFile = scanClass.path.toFile();
-        String inputFileName = inputFile.toString();
-
+    private void processSingleFile(ScanClass scanClass, TokenSink tokenSink, NavigationSink navigationSink) throws IOException {
         // Root Navigation
-        ChildItem rootNavForJar = new ChildItem(inputFile.getName());
-        apiListing.addChildItem(rootNavForJar);
+        ChildItem rootNavForJar = new ChildItem(scanClass.path.getFileName().toString());
+
+        // each class is tokenised into its own buffer, which is then handed to the sink in one go
+        final TokenBuffer tokens = new TokenBuffer();
+        getClassAPI(scanClass.cls, tokens, rootNavForJar);
+        tokenSink.acceptTokens(scanClass.path.getRoot().relativize(scanClass.path).toString(), tokens);
 
-        getClassAPI(scanClass.cls, apiListing, rootNavForJar);
+        // the navigation is complete once the class and its enclosed classes have been processed
+        navigationSink.acceptNavigation(rootNavForJar);
     }
 
-    private boolean getClassAPI(Class<?> cls, APIListing apiListing, ChildItem parent) {
-        final List<Token> tokens = apiListing.getTokens();
+    private boolean getClassAPI(Class<?> cls, TokenBuffer tokens, ChildItem parent) {
+        // a class the rules leave out is not listed, and neither are the classes nested within it
+        if (!isIncluded(cls)) {
+            return false;
+        }
 
         // class modifier
         boolean isPublicClass = getModifiers(cls.getModifiers(), tokens);
@@ -156,12 +214,12 @@ public class ReflectiveAnalyser implements Analyser {
         parent.addChildItem(classNav);
 
         // class name
-        tokens.add(new Token(KEYWORD, "class"));
-        tokens.add(new Token(WHITESPACE, " "));
-        tokens.add(new Token(TYPE_NAME, className, classId));
-        tokens.add(new Token(WHITESPACE, " "));
-        tokens.add(new Token(PUNCTUATION, "{"));
-        tokens.add(new Token(NEW_LINE, ""));
+        tokens.add(KEYWORD, "class");
+        tokens.add(WHITESPACE, " ");
+        tokens.add(TYPE_NAME, className, classId);
+        tokens.add(WHITESPACE, " ");
+        tokens.add(PUNCTUATION, "{");
+        tokens.add(NEW_LINE, "");
 
         indent();
 
@@ -177,13 +235,13 @@ public class ReflectiveAnalyser implements Analyser {
 
                     // field type
                     getType(field.getGenericType(), tokens);
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(WHITESPACE, " ");
 
                     // field name
-                    tokens.add(new Token(MEMBER_NAME, field.getName()));
+                    tokens.add(MEMBER_NAME, field.getName());
 
-                    tokens.add(new Token(PUNCTUATION, ";"));
-                    tokens.add(new Token(NEW_LINE, ""));
+                    tokens.add(PUNCTUATION, ";");
+                    tokens.add(NEW_LINE, "");
                 });
 
         // constructors
@@ -199,21 +257,21 @@ public class ReflectiveAnalyser implements Analyser {
                     // constructor name
                     String name = constructor.getDeclaringClass().getSimpleName();
                     String definitionId = constructor.toString().replaceAll(" ", "-");
-                    tokens.add(new Token(MEMBER_NAME, name, definitionId));
+                    tokens.add(MEMBER_NAME, name, definitionId);
 
                     // opening brace
-                    tokens.add(new Token(PUNCTUATION, "("));
+                    tokens.add(PUNCTUATION, "(");
 
                     // parameters
                     getParameters(constructor.getParameters(), tokens);
 
                     // closing brace and new line
-                    tokens.add(new Token(PUNCTUATION, ")"));
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(PUNCTUATION, "{"));
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(PUNCTUATION, "}"));
-                    tokens.add(new Token(NEW_LINE, ""));
+                    tokens.add(PUNCTUATION, ")");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "{");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "}");
+                    tokens.add(NEW_LINE, "");
                 });
 
         // methods
@@ -228,128 +286,124 @@ public class ReflectiveAnalyser implements Analyser {
 
                     // return type
                     getType(method.getGenericReturnType(), tokens);
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(WHITESPACE, " ");
 
                     // method name
                     String definitionId = method.toString().replaceAll(" ", "-");
-                    tokens.add(new Token(MEMBER_NAME, method.getName(), definitionId));
+                    tokens.add(MEMBER_NAME, method.getName(), definitionId);
 
                     // opening brace
-                    tokens.add(new Token(PUNCTUATION, "("));
+                    tokens.add(PUNCTUATION, "(");
 
                     // parameters
                     getParameters(method.getParameters(), tokens);
 
                     // closing brace and new line
-                    tokens.add(new Token(PUNCTUATION, ")"));
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(PUNCTUATION, "{"));
-                    tokens.add(new Token(WHITESPACE, " "));
-                    tokens.add(new Token(PUNCTUATION, "}"));
-                    tokens.add(new Token(NEW_LINE, ""));
+                    tokens.add(PUNCTUATION, ")");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "{");
+                    tokens.add(WHITESPACE, " ");
+                    tokens.add(PUNCTUATION, "}");
+                    tokens.add(NEW_LINE, "");
                 });
 
         // handle enclosed classes, passing in child navigation as we go deeper
         Stream.of(cls.getClasses())
-                .forEach(subclass -> getClassAPI(subclass, apiListing, classNav));
+                .forEach(subclass -> getClassAPI(subclass, tokens, classNav));
 
         // close class
-        tokens.add(new Token(PUNCTUATION, "}"));
-        tokens.add(new Token(NEW_LINE, ""));
+        tokens.add(PUNCTUATION, "}");
+        tokens.add(NEW_LINE, "");
 
         unindent();
 
         return true;
     }
 
-    private boolean getModifiers(int modifiers, List<Token> tokens) {
+    private boolean getModifiers(int modifiers, TokenBuffer tokens) {
         // abort - we only care about public and protected methods
-        if (! (isPublic(modifiers) || isProtected(modifiers))) {
+        if (isHidden(modifiers)) {
             return false;
         }
 
         // indentation
-        tokens.add(makeWhitespace());
+        tokens.add(WHITESPACE, makeWhitespace());
 
         if (isPublic(modifiers)) {
-            tokens.add(new Token(KEYWORD, "public"));
+            tokens.add(KEYWORD, "public");
         } else if (isProtected(modifiers)) {
-            tokens.add(new Token(KEYWORD, "protected"));
+            tokens.add(KEYWORD, "protected");
         }
 
-        tokens.add(new Token(WHITESPACE, " "));
+        tokens.add(WHITESPACE, " ");
 
         if (isAbstract(modifiers)) {
-            tokens.add(new Token(KEYWORD, "abstract"));
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.add(KEYWORD, "abstract");
+            tokens.add(WHITESPACE, " ");
         }
         if (isFinal(modifiers)) {
-            tokens.add(new Token(KEYWORD, "final"));
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.add(KEYWORD, "final");
+            tokens.add(WHITESPACE, " ");
         }
         if (isStatic(modifiers)) {
-            tokens.add(new Token(KEYWORD, "static"));
-            tokens.add(new Token(WHITESPACE, " "));
+            tokens.add(KEYWORD, "static");
+            tokens.add(WHITESPACE, " ");
         }
 
         return true;
     }
 
-    private void getParameters(Parameter[] parameters, List<Token> tokens) {
+    private void getParameters(Parameter[] parameters, TokenBuffer tokens) {
         for(int i = 0; i < parameters.length; i++) {
             Parameter parameter = parameters[i];
             getType(parameter.getParameterizedType(), tokens);
-            tokens.add(new Token(WHITESPACE, " "));
-            tokens.add(new Token(TEXT, parameter.getName()));
+            tokens.add(WHITESPACE, " ");
+            tokens.add(TEXT, parameter.getName());
 
             // add comma and space until the last parameter
             if (i < parameters.length - 1) {
-                tokens.add(new Token(PUNCTUATION, ","));
-                tokens.add(new Token(WHITESPACE, " "));
+                tokens.add(PUNCTUATION, ",");
+                tokens.add(WHITESPACE, " ");
             }
         }
     }
 
-    private void getType(Type type, List<Token> tokens) {
+    private void getType(Type type, TokenBuffer tokens) {
         if (type instanceof ParameterizedType) {
             ParameterizedType parameterizedType = (ParameterizedType) type;
             Type[] parameterTypes = parameterizedType.getActualTypeArguments();
 
             Class<?> rawType = (Class<?>) parameterizedType.getRawType();
             getType(rawType, tokens);
-            tokens.add(new Token(PUNCTUATION, "<"));
+            tokens.add(PUNCTUATION, "<");
 
             for(int i = 0; i < parameterTypes.length; i++) {
                 getType(parameterTypes[i], tokens);
 
                 // add comma and space until the last parameter
                 if (i < parameterTypes.length - 1) {
-                    tokens.add(new Token(PUNCTUATION, ","));
-                    tokens.add(new Token(WHITESPACE, " "));
+                    tokens.add(PUNCTUATION, ",");
+                    tokens.add(WHITESPACE, " ");
                 }
             }
 
-            tokens.add(new Token(PUNCTUATION, ">"));
+            tokens.add(PUNCTUATION, ">");
         } else if (type instanceof Class) {
             getClassType((Class<?>)type, tokens);
         } else if (type instanceof TypeVariable) {
-            tokens.add(new Token(TYPE_NAME, ((TypeVariable<?>) type).getName()));
+            tokens.add(TYPE_NAME, ((TypeVariable<?>) type).getName());
         } else {
             System.err.println("Unknown type " + type + " of type " + type.getClass());
         }
     }
 
-    private void getClassType(Class<?> type, List<Token> tokens) {
+    private void getClassType(Class<?> type, TokenBuffer tokens) {
         if (type.isArray()) {
             getClassType(type.getComponentType(), tokens);
-            tokens.add(new Token(PUNCTUATION, "[]"));
+            tokens.add(PUNCTUATION, "[]");
         } else {
             String typeName = type.getSimpleName();
-            Token token = new Token(TYPE_NAME, typeName);
-            if (knownTypes.containsKey(typeName)) {
-                token.setNavigateToId(knownTypes.get(typeName));
-            }
-            tokens.add(token);
+            tokens.add(TYPE_NAME, typeName, null, knownTypes.get(type));
         }
     }
 
@@ -361,12 +415,18 @@ public class ReflectiveAnalyser implements Analyser {
         indent = Math.max(indent - 4, 0);
     }
 
-    private Token makeWhitespace() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < indent; i++) {
-            sb.append(" ");
-        }
-        return new Token(WHITESPACE, sb.toString());
+    private String makeWhitespace() {
+        return Indentation.of(indent);
+    }
+
+    // whether a class or member with the given modifiers is left out of the listing - protected ones are only listed
+    // when the rules allow them
+    private boolean isHidden(int modifiers) {
+        return ! (isPublic(modifiers) || (isProtected(modifiers) && !rules.isPublicOnly()));
+    }
+
+    private boolean isIncluded(Class<?> cls) {
+        return rules.includesType(cls.getName().replace('$', '.'));
     }
 
     private String makeId(Class<?> cls) {
@@ -0,0 +1,192 @@
+package net.jonathangiles.tools.apilisting.analysers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The types declared in the sources being analysed, by fully qualified name, and the id each one is linked to. A type
+ * name as written in a source file is resolved against the file it appears in - the types the file declares, its
+ * imports and its package - so that two types with the same simple name in different packages are each linked to the
+ * right declaration.
+ *
+ * <p>The index is filled in while the files are scanned, and only read once every file has been scanned, so it can be
+ * shared by all the threads that tokenise files. Resolving a name takes a handful of hash lookups and creates no
+ * objects, as it is done for every type name in every signature - other than the first time a name is looked for in
+ * a package of the JDK, which loads the class it may name.</p>
+ */
+final class TypeIndex {
+    // marks a simple name that more than one type has, and a name that a file imports from outside the index - both
+    // resolve to no id, but stop the search for one
+    private static final String NOT_FOUND = new String("(not found)");
+
+    // the id of each type, by fully qualified name
+    private final Map<String, String> ids = new ConcurrentHashMap<>();
+
+    // the id of each type directly within a package or an enclosing type, by the name of the package or enclosing
+    // type and then by simple name
+    private final Map<String, Map<String, String>> members = new ConcurrentHashMap<>();
+
+    // the id of each type by simple name, or NOT_FOUND when more than one type has the name
+    private final Map<String, String> bySimpleName = new ConcurrentHashMap<>();
+
+    // the types of the dependency jars, which are never linked, but hide the types of the same simple name in the
+    // index - null when no classpath is given
+    private ClasspathIndex classpath;
+
+    // whether the JDK has a type with a simple name directly within a package or type, by the name of the package or
+    // type and then by simple name - filled in as names are looked for
+    private final Map<String, Map<String, Boolean>> jdkTypes = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the types of the dependency jars, so that a name that refers to one of them is not linked to a type of the
+     * same simple name in the index.
+     */
+    void setClasspath(ClasspathIndex classpath) {
+        this.classpath = classpath;
+    }
+
+    /**
+     * Adds a type, given the package or type it is declared in, its simple name and its fully qualified name.
+     */
+    void add(String enclosingName, String simpleName, String fullyQualifiedName, String id) {
+        final String previousId = ids.put(fullyQualifiedName, id);
+        members.computeIfAbsent(enclosingName, name -> new ConcurrentHashMap<>()).put(simpleName, id);
+
+        // the same type seen twice, such as from a duplicated source file, does not make its simple name ambiguous
+        if (!id.equals(previousId)) {
+            bySimpleName.merge(simpleName, id, (existing, added) -> existing.equals(added) ? existing : NOT_FOUND);
+        }
+    }
+
+    /**
+     * Returns the id of the type with the given fully qualified name, or null if it is not in the index.
+     */
+    String get(String fullyQualifiedName) {
+        return ids.get(fullyQualifiedName);
+    }
+
+    /**
+     * Returns a resolver for type names written in a file of the given package, which declares the given types and
+     * has the given imports. On-demand imports end in {@code .*}, and static imports are left out.
+     */
+    Resolver resolver(String packageName, List<ASTAnalyser.ScanType> declaredTypes, List<String> imports) {
+        return new Resolver(packageName, declaredTypes, imports);
+    }
+
+    private String getMemberOrDependency(String enclosingName, String simpleName) {
+        final Map<String, String> enclosed = members.get(enclosingName);
+        final String id = enclosed == null ? null : enclosed.get(simpleName);
+        if (id == null && classpath != null && classpath.contains(enclosingName, simpleName)) {
+            return NOT_FOUND;
+        }
+        return id;
+    }
+
+    // whether the JDK declares a type with the given simple name directly within the given package or type. The JDK is
+    // asked through the loader of the platform classes, so that the classes of this tool are never found
+    private boolean isJdkType(String enclosingName, String simpleName) {
+        final Map<String, Boolean> enclosed = jdkTypes.computeIfAbsent(enclosingName, name -> new ConcurrentHashMap<>());
+        Boolean found = enclosed.get(simpleName);
+        if (found == null) {
+            found = isPlatformClass(enclosingName + '.' + simpleName) || isPlatformClass(enclosingName + '$' + simpleName);
+            enclosed.put(simpleName, found);
+        }
+        return found;
+    }
+
+    private static boolean isPlatformClass(String className) {
+        try {
+            Class.forName(className, false, ClassLoader.getSystemClassLoader().getParent());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the type names written in one source file.
+     */
+    final class Resolver {
+        private final String packageName;
+
+        // the types the file declares and the types it imports by name, which are found first
+        private final Map<String, String> named;
+
+        // the packages and types whose members the file imports on demand, ending with java.lang, which every file
+        // imports on demand
+        private final String[] onDemand;
+
+        // whether every type the file imports on demand can be seen - a name that is found nowhere else is only linked
+        // to the one type in the index with that simple name when it cannot be a type imported on demand instead
+        private final boolean onDemandVisible;
+
+        private Resolver(String packageName, List<ASTAnalyser.ScanType> declaredTypes, List<String> imports) {
+            this.packageName = packageName;
+            this.named = new HashMap<>();
+
+            // a type declared in the file, including a nested type, hides any type of the same name from elsewhere
+            for (final ASTAnalyser.ScanType type : declaredTypes) {
+                named.putIfAbsent(type.typeName, ids.get(type.fullQualifiedName));
+            }
+
+            int onDemandCount = 0;
+            for (final String importName : imports) {
+                if (importName.endsWith(".*")) {
+                    onDemandCount++;
+                } else {
+                    // a type imported from outside the index still hides types of the same name in the package
+                    final String id = ids.get(importName);
+                    named.putIfAbsent(importName.substring(importName.lastIndexOf('.') + 1), id == null ? NOT_FOUND : id);
+                }
+            }
+
+            this.onDemand = new String[onDemandCount + 1];
+            int i = 0;
+            for (final String importName : imports) {
+                if (importName.endsWith(".*")) {
+                    onDemand[i++] = importName.substring(0, importName.length() - 2);
+                }
+            }
+            onDemand[i] = "java.lang";
+
+            // the packages and types of the index can be seen into, and so can those of the JDK. The package names of
+            // the dependency jars are not kept, so their packages are treated like any other unknown package
+            boolean visible = true;
+            for (final String enclosingName : onDemand) {
+                visible &= members.containsKey(enclosingName) || enclosingName.startsWith("java.");
+            }
+            this.onDemandVisible = visible;
+        }
+
+        /**
+         * Returns the id of the type that the given name refers to in this file, or null if it does not refer to a
+         * type in the index. A simple name is looked for, in turn, among the types the file declares and imports by
+         * name, the types in the same package, and the types imported on demand, including those of java.lang - from
+         * the dependency jars and the JDK as well as the index. A name that is found in none of these, such as a
+         * member type inherited from a supertype, is linked to the one type in the index with that simple name, if
+         * there is only one and the file imports nothing on demand from a package that cannot be seen into.
+         */
+        String resolve(String typeName) {
+            if (typeName.indexOf('.') >= 0) {
+                return ids.get(typeName);
+            }
+
+            String id = named.get(typeName);
+            if (id == null) {
+                id = getMemberOrDependency(packageName, typeName);
+            }
+            for (int i = 0; id == null && i < onDemand.length; i++) {
+                id = getMemberOrDependency(onDemand[i], typeName);
+                if (id == null && !members.containsKey(onDemand[i]) && isJdkType(onDemand[i], typeName)) {
+                    id = NOT_FOUND;
+                }
+            }
+            if (id == null && onDemandVisible) {
+                id = bySimpleName.get(typeName);
+            }
+            return id == NOT_FOUND ? null : id;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package net.jonathangiles.tools.apilisting.analysers.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a class file that make up its API, read directly from the class file format rather than by loading the
+ * class. Only the constant pool entries and attributes that the API needs are kept - everything else, including all
+ * bytecode, is skipped over.
+ *
+ * <p>Class names are kept in their internal form, e.g. {@code java/util/Map$Entry}.</p>
+ */
+public final class ClassFile {
+    // access flags, as defined by the class file format. The ones that java.lang.reflect.Modifier also defines have the
+    // same values there, so these flags can be passed to its methods
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SYNCHRONIZED = 0x0020;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_VARARGS = 0x0080;
+    public static final int ACC_NATIVE = 0x0100;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_STRICT = 0x0800;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final int accessFlags;
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces;
+    private final String signature;
+    private final List<MemberInfo> fields;
+    private final List<MemberInfo> methods;
+    private final List<InnerClassInfo> innerClasses;
+
+    private ClassFile(int accessFlags, String name, String superName, List<String> interfaces, String signature,
+                      List<MemberInfo> fields, List<MemberInfo> methods, List<InnerClassInfo> innerClasses) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.signature = signature;
+        this.fields = fields;
+        this.methods = methods;
+        this.innerClasses = innerClasses;
+    }
+
+    public static ClassFile read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    public static ClassFile read(InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        final ConstantPool constantPool = ConstantPool.read(in);
+
+        final int accessFlags = in.readUnsignedShort();
+        final String name = constantPool.className(in.readUnsignedShort());
+        final String superName = constantPool.className(in.readUnsignedShort());
+
+        final int interfaceCount = in.readUnsignedShort();
+        final List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(constantPool.className(in.readUnsignedShort()));
+        }
+
+        final List<MemberInfo> fields = readMembers(in, constantPool);
+        final List<MemberInfo> methods = readMembers(in, constantPool);
+
+        String signature = null;
+        List<InnerClassInfo> innerClasses = Collections.emptyList();
+        final int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            final String attributeName = constantPool.utf8(in.readUnsignedShort());
+            final int length = in.readInt();
+            switch (attributeName) {
+                case "Signature":
+                    signature = constantPool.utf8(in.readUnsignedShort());
+                    break;
+                case "InnerClasses":
+                    final int count = in.readUnsignedShort();
+                    innerClasses = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        innerClasses.add(new InnerClassInfo(
+                                constantPool.className(in.readUnsignedShort()),
+                                constantPool.className(in.readUnsignedShort()),
+                                constantPool.utf8(in.readUnsignedShort()),
+                                in.readUnsignedShort()));
+                    }
+                    break;
+                default:
+                    skipFully(in, length);
+            }
+        }
+
+        return new ClassFile(accessFlags, name, superName, interfaces, signature, fields, methods, innerClasses);
+    }
+
+    private static List<MemberInfo> readMembers(DataInputStream in, ConstantPool constantPool) throws IOException {
+        final int memberCount = in.readUnsignedShort();
+        final List<MemberInfo> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            final int accessFlags = in.readUnsignedShort();
+            final String name = constantPool.utf8(in.readUnsignedShort());
+            final String descriptor = constantPool.utf8(in.readUnsignedShort());
+
+            String signature = null;
+            List<String> exceptions = Collections.emptyList();
+            List<String> parameterNames = null;
+
+            final int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                final String attributeName = constantPool.utf8(in.readUnsignedShort());
+                final int length = in.readInt();
+                switch (attributeName) {
+                    case "Signature":
+                        signature = constantPool.utf8(in.readUnsignedShort());
+                        break;
+                    case "Exceptions":
+                        final int exceptionCount = in.readUnsignedShort();
+                        exceptions = new ArrayList<>(exceptionCount);
+                        for (int k = 0; k < exceptionCount; k++) {
+                            exceptions.add(constantPool.className(in.readUnsignedShort()));
+                        }
+                        break;
+                    case "MethodParameters":
+                        final int parameterCount = in.readUnsignedByte();
+                        parameterNames = new ArrayList<>(parameterCount);
+                        for (int k = 0; k < parameterCount; k++) {
+                            parameterNames.add(constantPool.utf8(in.readUnsignedShort()));
+                            in.readUnsignedShort(); // access flags
+                        }
+                        break;
+                    default:
+                        skipFully(in, length);
+                }
+            }
+
+            members.add(new MemberInfo(accessFlags, name, descriptor, signature, exceptions, parameterNames));
+        }
+        return members;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        // skipBytes may skip fewer bytes than asked for, so when it makes no progress we read a byte instead, which
+        // fails rather than looping forever at the end of the stream
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                in.readByte();
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The superclass of this class, or null for java/lang/Object and module-info.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * The generic signature of this class, or null if it has no generic type parameters or supertypes.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    public List<MemberInfo> getFields() {
+        return fields;
+    }
+
+    public List<MemberInfo> getMethods() {
+        return methods;
+    }
+
+    public List<InnerClassInfo> getInnerClasses() {
+        return innerClasses;
+    }
+
+    public boolean isEnum() {
+        return (accessFlags & ACC_ENUM) != 0 && "java/lang/Enum".equals(superName);
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * The access flags of this class as declared in source, which for a nested class are recorded in the InnerClasses
+     * attribute - the access flags of the class file itself never include private, protected or static.
+     */
+    public int getDeclaredAccessFlags() {
+        final InnerClassInfo self = getInnerClass(name);
+        return self == null ? accessFlags : self.getAccessFlags();
+    }
+
+    /**
+     * The simple name of this class, as given in source. An anonymous class has an empty simple name.
+     */
+    public String getSimpleName() {
+        final InnerClassInfo self = getInnerClass(name);
+        if (self != null) {
+            return self.getSimpleName() == null ? "" : self.getSimpleName();
+        }
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * The canonical name of this class, e.g. {@code java.util.Map.Entry}. Local and anonymous classes have no
+     * canonical name, so their binary name is returned instead.
+     */
+    public String getCanonicalName() {
+        final String canonicalName = canonicalName(name);
+        return canonicalName == null ? name.replace('/', '.') : canonicalName;
+    }
+
+    private String canonicalName(String className) {
+        final InnerClassInfo info = getInnerClass(className);
+        if (info == null) {
+            // a top-level class - the InnerClasses attribute lists every class that encloses this one
+            return className.replace('/', '.');
+        }
+        if (info.getOuterName() == null || info.getSimpleName() == null) {
+            return null;
+        }
+        final String outerCanonicalName = canonicalName(info.getOuterName());
+        return outerCanonicalName == null ? null : outerCanonicalName + "." + info.getSimpleName();
+    }
+
+    private InnerClassInfo getInnerClass(String className) {
+        for (final InnerClassInfo innerClass : innerClasses) {
+            if (innerClass.getName().equals(className)) {
+                return innerClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The constant pool, of which we only keep the UTF-8 strings and the class entries that point at them.
+     */
+    private static final class ConstantPool {
+        private final String[] utf8s;
+        private final int[] classNameIndexes;
+
+        private ConstantPool(String[] utf8s, int[] classNameIndexes) {
+            this.utf8s = utf8s;
+            this.classNameIndexes = classNameIndexes;
+        }
+
+        static ConstantPool read(DataInputStream in) throws IOException {
+            final int count = in.readUnsignedShort();
+            final String[] utf8s = new String[count];
+            final int[] classNameIndexes = new int[count];
+
+            // entry 0 is unused, and long and double entries take up two slots
+            for (int i = 1; i < count; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        // the class file format uses the same modified UTF-8 encoding as DataInput
+                        utf8s[i] = in.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                        classNameIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        in.readUnsignedShort();
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        in.readUnsignedByte();
+                        in.readUnsignedShort();
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        in.readInt();
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        in.readLong();
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " at index " + i);
+                }
+            }
+            return new ConstantPool(utf8s, classNameIndexes);
+        }
+
+        String utf8(int index) {
+            return index == 0 ? null : utf8s[index];
+        }
+
+        String className(int index) {
+            return index == 0 ? null : utf8s[classNameIndexes[index]];
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.jonathangiles.tools.apilisting.analysers.bytecode;
+
+/**
+ * An entry of the InnerClasses attribute, which describes a nested class that a class file declares or refers to.
+ */
+public final class InnerClassInfo {
+    private final String name;
+    private final String outerName;
+    private final String simpleName;
+    private final int accessFlags;
+
+    InnerClassInfo(String name, String outerName, String simpleName, int accessFlags) {
+        this.name = name;
+        this.outerName = outerName;
+        this.simpleName = simpleName;
+        this.accessFlags = accessFlags;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The class that declares this class as a member, or null for local and anonymous classes.
+     */
+    public String getOuterName() {
+        return outerName;
+    }
+
+    /**
+     * The simple name of the class, or null for anonymous classes.
+     */
+    public String getSimpleName() {
+        return simpleName;
+    }
+
+    /**
+     * The access flags of the class as declared in source.
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+}
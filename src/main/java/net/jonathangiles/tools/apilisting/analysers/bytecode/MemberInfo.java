@@ -0,0 +1,74 @@
+package net.jonathangiles.tools.apilisting.analysers.bytecode;
+
+import java.util.List;
+
+/**
+ * A field or method of a class file.
+ */
+public final class MemberInfo {
+    private final int accessFlags;
+    private final String name;
+    private final String descriptor;
+    private final String signature;
+    private final List<String> exceptions;
+    private final List<String> parameterNames;
+
+    MemberInfo(int accessFlags, String name, String descriptor, String signature, List<String> exceptions,
+               List<String> parameterNames) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.signature = signature;
+        this.exceptions = exceptions;
+        this.parameterNames = parameterNames;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * The name of the member, which is '&lt;init&gt;' for constructors and '&lt;clinit&gt;' for static initializers.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * The generic signature of the member, or null if it has no generic types.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * The exceptions a method declares that it throws, as internal class names.
+     */
+    public List<String> getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * The parameter names of a method, or null if the class was compiled without '-parameters'. A name may be null
+     * when the compiler did not record it.
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    public boolean isConstructor() {
+        return "<init>".equals(name);
+    }
+
+    public boolean isStaticInitializer() {
+        return "<clinit>".equals(name);
+    }
+
+    public boolean isSynthetic() {
+        return (accessFlags & ClassFile.ACC_SYNTHETIC) != 0;
+    }
+}
@@ -0,0 +1,296 @@
+package net.jonathangiles.tools.apilisting.analysers.bytecode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A type as it appears in a field or method descriptor or generic signature, parsed from its class file form, e.g.
+ * {@code Ljava/util/Map<TK;+Ljava/lang/Number;>;}.
+ */
+public final class TypeSignature {
+    public enum Kind {
+        PRIMITIVE,
+        CLASS,
+        TYPE_VARIABLE,
+        ARRAY,
+        WILDCARD
+    }
+
+    private final Kind kind;
+
+    // the primitive name, the internal class name, or the type variable name
+    private final String name;
+
+    // the type arguments of a class type, the component type of an array, or the bound of a wildcard
+    private final List<TypeSignature> typeArguments;
+    private final TypeSignature componentType;
+
+    // for wildcards: '+' for extends, '-' for super, and '*' when unbounded
+    private final char wildcardKind;
+
+    private TypeSignature(Kind kind, String name, List<TypeSignature> typeArguments, TypeSignature componentType,
+                          char wildcardKind) {
+        this.kind = kind;
+        this.name = name;
+        this.typeArguments = typeArguments;
+        this.componentType = componentType;
+        this.wildcardKind = wildcardKind;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<TypeSignature> getTypeArguments() {
+        return typeArguments;
+    }
+
+    /**
+     * The component type of an array, or the bound of a wildcard - null for an unbounded wildcard.
+     */
+    public TypeSignature getComponentType() {
+        return componentType;
+    }
+
+    public char getWildcardKind() {
+        return wildcardKind;
+    }
+
+    /**
+     * The simple name of a class type. Nested classes are recognised by the '$' in their binary name, as the class
+     * file of the enclosing class is not at hand to say otherwise.
+     */
+    public String getSimpleName() {
+        final String simpleName = name.substring(name.lastIndexOf('/') + 1);
+        return simpleName.substring(simpleName.lastIndexOf('$') + 1);
+    }
+
+    /**
+     * The name of this type as returned by {@link Class#getTypeName()} for its erasure, e.g. {@code java.util.Map$Entry[]}.
+     */
+    public String getTypeName() {
+        switch (kind) {
+            case ARRAY:
+                return componentType.getTypeName() + "[]";
+            case CLASS:
+                return name.replace('/', '.');
+            default:
+                return name;
+        }
+    }
+
+    /**
+     * Parses a field descriptor or field signature.
+     */
+    public static TypeSignature parse(String signature) {
+        final Parser parser = new Parser(signature);
+        final TypeSignature type = parser.type();
+        parser.expectEnd();
+        return type;
+    }
+
+    /**
+     * The parameter types, return type and thrown exceptions of a method descriptor or method signature.
+     */
+    public static final class MethodSignature {
+        private final List<TypeSignature> parameterTypes;
+        private final TypeSignature returnType;
+        private final List<TypeSignature> exceptionTypes;
+
+        MethodSignature(List<TypeSignature> parameterTypes, TypeSignature returnType, List<TypeSignature> exceptionTypes) {
+            this.parameterTypes = parameterTypes;
+            this.returnType = returnType;
+            this.exceptionTypes = exceptionTypes;
+        }
+
+        public List<TypeSignature> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public TypeSignature getReturnType() {
+            return returnType;
+        }
+
+        /**
+         * The exceptions given in a generic signature, which are only recorded there if one of them is a type variable.
+         */
+        public List<TypeSignature> getExceptionTypes() {
+            return exceptionTypes;
+        }
+    }
+
+    /**
+     * Parses a method descriptor or method signature. Type parameters of generic methods are skipped.
+     */
+    public static MethodSignature parseMethod(String signature) {
+        final Parser parser = new Parser(signature);
+        parser.skipTypeParameters();
+
+        parser.expect('(');
+        final List<TypeSignature> parameterTypes = new ArrayList<>();
+        while (parser.peek() != ')') {
+            parameterTypes.add(parser.type());
+        }
+        parser.expect(')');
+
+        final TypeSignature returnType = parser.type();
+
+        List<TypeSignature> exceptionTypes = Collections.emptyList();
+        while (parser.hasMore() && parser.peek() == '^') {
+            parser.expect('^');
+            if (exceptionTypes.isEmpty()) {
+                exceptionTypes = new ArrayList<>();
+            }
+            exceptionTypes.add(parser.type());
+        }
+        parser.expectEnd();
+
+        return new MethodSignature(parameterTypes, returnType, exceptionTypes);
+    }
+
+    private static final class Parser {
+        private final String signature;
+        private int position;
+
+        Parser(String signature) {
+            this.signature = signature;
+        }
+
+        TypeSignature type() {
+            final char c = next();
+            switch (c) {
+                case 'B': return primitive("byte");
+                case 'C': return primitive("char");
+                case 'D': return primitive("double");
+                case 'F': return primitive("float");
+                case 'I': return primitive("int");
+                case 'J': return primitive("long");
+                case 'S': return primitive("short");
+                case 'Z': return primitive("boolean");
+                case 'V': return primitive("void");
+                case '[':
+                    return new TypeSignature(Kind.ARRAY, null, Collections.emptyList(), type(), (char) 0);
+                case 'T':
+                    final String typeVariable = identifier(';');
+                    expect(';');
+                    return new TypeSignature(Kind.TYPE_VARIABLE, typeVariable, Collections.emptyList(), null, (char) 0);
+                case 'L':
+                    return classType();
+                default:
+                    throw error("Unexpected '" + c + "'");
+            }
+        }
+
+        private TypeSignature classType() {
+            // the package and outer classes come first, and for a nested class of a generic class each class is
+            // separated by '.' and may have its own type arguments - we keep the arguments of the innermost class
+            final StringBuilder name = new StringBuilder(identifier('<', '.', ';'));
+            List<TypeSignature> typeArguments = typeArguments();
+            while (peek() == '.') {
+                next();
+                name.append('$').append(identifier('<', '.', ';'));
+                typeArguments = typeArguments();
+            }
+            expect(';');
+            return new TypeSignature(Kind.CLASS, name.toString(), typeArguments, null, (char) 0);
+        }
+
+        private List<TypeSignature> typeArguments() {
+            if (peek() != '<') {
+                return Collections.emptyList();
+            }
+            next();
+
+            final List<TypeSignature> typeArguments = new ArrayList<>();
+            while (peek() != '>') {
+                final char c = peek();
+                if (c == '*') {
+                    next();
+                    typeArguments.add(new TypeSignature(Kind.WILDCARD, "?", Collections.emptyList(), null, '*'));
+                } else if (c == '+' || c == '-') {
+                    next();
+                    typeArguments.add(new TypeSignature(Kind.WILDCARD, "?", Collections.emptyList(), type(), c));
+                } else {
+                    typeArguments.add(type());
+                }
+            }
+            next();
+            return typeArguments;
+        }
+
+        void skipTypeParameters() {
+            if (peek() != '<') {
+                return;
+            }
+            // identifiers cannot contain angle brackets, so the type parameters end where the brackets balance again
+            int depth = 0;
+            do {
+                final char c = next();
+                if (c == '<') {
+                    depth++;
+                } else if (c == '>') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        private TypeSignature primitive(String name) {
+            return new TypeSignature(Kind.PRIMITIVE, name, Collections.emptyList(), null, (char) 0);
+        }
+
+        private String identifier(char... terminators) {
+            final int start = position;
+            while (position < signature.length() && !isTerminator(signature.charAt(position), terminators)) {
+                position++;
+            }
+            return signature.substring(start, position);
+        }
+
+        private static boolean isTerminator(char c, char[] terminators) {
+            for (final char terminator : terminators) {
+                if (c == terminator) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasMore() {
+            return position < signature.length();
+        }
+
+        char peek() {
+            if (!hasMore()) {
+                throw error("Unexpected end");
+            }
+            return signature.charAt(position);
+        }
+
+        char next() {
+            final char c = peek();
+            position++;
+            return c;
+        }
+
+        void expect(char expected) {
+            if (next() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        void expectEnd() {
+            if (hasMore()) {
+                throw error("Unexpected trailing characters");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of signature '" + signature + "'");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package net.jonathangiles.tools.apilisting.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An on-disk cache of generated listings, keyed by the content of the input jar file, the analyser that produced the
+ * listing, and the version of this tool. A listing is stored as '&lt;key&gt;.json' in the cache directory, alongside a
+ * '&lt;key&gt;.sha256' file holding the digest of the listing, which is used to verify the entry when it is read back.
+ *
+ * <p>The total size of the cached listings is kept under a cap by evicting the least recently used entries, where an
+ * entry is used when it is stored or fetched. Multiple processes may share a cache directory - entries are written to a
+ * temporary file and then moved into place, so a reader never sees a partially written entry.</p>
+ */
+public class ResultCache {
+    private static final String LISTING_SUFFIX = ".json";
+    private static final String DIGEST_SUFFIX = ".sha256";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final boolean verify;
+
+    /**
+     * @param directory the directory to store cached listings in, which is created if it does not exist.
+     * @param maxBytes the maximum total size of the cached listings.
+     * @param verify whether the digest of a cached listing is checked before it is used.
+     */
+    public ResultCache(Path directory, long maxBytes, boolean verify) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.verify = verify;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Computes the cache key for the given jar file, which is the SHA-256 of the jar file's content combined with the
+     * review name, which is written into the listing, the name of the analyser (and anything else that changes the
+     * output) and the tool version.
+     */
+    public static String key(File jarFile, String reviewName, String analyser, String toolVersion) throws IOException {
+        final String jarDigest = Digests.sha256(jarFile.toPath());
+        // the review name is free text, so its length is included to keep it from running into the fields around it
+        return Digests.sha256((jarDigest + "/" + reviewName.length() + ":" + reviewName + "/" + analyser + "/" + toolVersion)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies the cached listing with the given key to the destination, returning false if there is no such listing, or
+     * if verification is enabled and the listing does not match its digest, in which case the entry is removed.
+     */
+    public boolean fetch(String key, Path destination) throws IOException {
+        final Path listing = directory.resolve(key + LISTING_SUFFIX);
+        if (!Files.exists(listing)) {
+            return false;
+        }
+
+        try {
+            if (verify) {
+                final String expected = new String(Files.readAllBytes(directory.resolve(key + DIGEST_SUFFIX)), StandardCharsets.UTF_8);
+                if (!expected.trim().equals(Digests.sha256(listing))) {
+                    System.err.println("Cached listing '" + listing + "' is corrupt, removing it");
+                    remove(key);
+                    return false;
+                }
+            }
+
+            Files.copy(listing, destination, StandardCopyOption.REPLACE_EXISTING);
+
+            // mark the entry as recently used, so that it is evicted last
+            Files.setLastModifiedTime(listing, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            // the entry was evicted by another process while we were reading it
+            return false;
+        }
+    }
+
+    /**
+     * Stores a copy of the given listing under the given key, and then evicts the least recently used entries until the
+     * cache is within its size cap.
+     */
+    public void store(String key, Path listing) throws IOException {
+        final Path temp = Files.createTempFile(directory, key, ".tmp");
+        final Path digestTemp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.copy(listing, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.write(digestTemp, Digests.sha256(temp).getBytes(StandardCharsets.UTF_8));
+            // the digest is moved into place first, so that a listing is never seen without its complete digest
+            move(digestTemp, directory.resolve(key + DIGEST_SUFFIX));
+            move(temp, directory.resolve(key + LISTING_SUFFIX));
+        } finally {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(digestTemp);
+        }
+
+        evict();
+    }
+
+    private void evict() throws IOException {
+        final List<Path> listings = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + LISTING_SUFFIX)) {
+            stream.forEach(listings::add);
+        }
+
+        // read the attributes once, as they may change underneath us while sorting
+        final List<Entry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        for (final Path listing : listings) {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(listing, BasicFileAttributes.class);
+                entries.add(new Entry(listing, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                totalBytes += attributes.size();
+            } catch (NoSuchFileException e) {
+                // already evicted by another process
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        for (final Entry entry : entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            final String fileName = entry.listing.getFileName().toString();
+            remove(fileName.substring(0, fileName.length() - LISTING_SUFFIX.length()));
+            totalBytes -= entry.size;
+        }
+    }
+
+    private void remove(String key) throws IOException {
+        Files.deleteIfExists(directory.resolve(key + LISTING_SUFFIX));
+        Files.deleteIfExists(directory.resolve(key + DIGEST_SUFFIX));
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class Entry {
+        private final Path listing;
+        private final long size;
+        private final long lastUsed;
+
+        Entry(Path listing, long size, long lastUsed) {
+            this.listing = listing;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package net.jonathangiles.tools.apilisting.metrics;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of each phase of a run, along with counters such as the number of
+ * files and tokens, so that it is possible to see where the time goes without attaching a profiler.
+ *
+ * <p>CPU time is the CPU time of the whole process, so that work done on pool threads is included. Allocated bytes are
+ * summed over all live threads when a phase starts and ends, so allocations by threads that terminate during a phase
+ * are not counted, and a phase that such a thread allocated in may even report fewer bytes than it allocated. Both are
+ * reported as -1 on JVMs that do not support measuring them.</p>
+ *
+ * <p>As neither is measured per run, the phases of a run also count the work of any other run in the same process at
+ * the same time. Metrics are therefore only recorded in batch and daemon mode when jar files are analysed one at a
+ * time.</p>
+ */
+public class Metrics {
+    private static final Metrics DISABLED = new Metrics(false);
+
+    private final boolean enabled;
+    private final long startNanos;
+    private final List<PhaseResult> phases;
+    private final Map<String, Long> counters;
+
+    /**
+     * Returns a metrics instance that records nothing.
+     */
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    public Metrics() {
+        this(true);
+    }
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+        this.startNanos = System.nanoTime();
+        this.phases = new ArrayList<>();
+        this.counters = new LinkedHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing the phase with the given name. The phase ends when the returned phase is closed, which is intended
+     * to be done with a try-with-resources statement.
+     */
+    public Phase startPhase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Adds the given value to the counter with the given name, e.g. 'files' or 'tokens'.
+     */
+    public synchronized void addCount(String name, long value) {
+        if (enabled) {
+            counters.merge(name, value, Long::sum);
+        }
+    }
+
+    /**
+     * Writes the metrics recorded so far as JSON to the given stream, which is left open.
+     */
+    public void writeTo(OutputStream outputStream, ObjectMapper objectMapper) throws IOException {
+        objectMapper.writerWithDefaultPrettyPrinter()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(outputStream, toMap());
+    }
+
+    /**
+     * Returns the metrics as nested maps, with the phases in the order they finished and throughput derived from the
+     * counters and the wall time since this instance was created.
+     */
+    public synchronized Map<String, Object> toMap() {
+        final long totalWallNanos = System.nanoTime() - startNanos;
+        final double totalSeconds = totalWallNanos / 1e9;
+
+        final List<Map<String, Object>> phaseMaps = new ArrayList<>();
+        for (final PhaseResult phase : phases) {
+            final Map<String, Object> phaseMap = new LinkedHashMap<>();
+            phaseMap.put("name", phase.name);
+            phaseMap.put("wallMillis", phase.wallNanos / 1_000_000.0);
+            phaseMap.put("cpuMillis", phase.cpuNanos < 0 ? -1 : phase.cpuNanos / 1_000_000.0);
+            phaseMap.put("allocatedBytes", phase.allocatedBytes);
+            phaseMaps.add(phaseMap);
+        }
+
+        final Map<String, Object> throughput = new LinkedHashMap<>();
+        counters.forEach((name, value) -> throughput.put(name + "PerSecond", totalSeconds == 0 ? 0 : value / totalSeconds));
+
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("totalWallMillis", totalWallNanos / 1_000_000.0);
+        map.put("phases", phaseMaps);
+        map.put("counters", new LinkedHashMap<>(counters));
+        map.put("throughput", throughput);
+        return map;
+    }
+
+    private synchronized void record(PhaseResult result) {
+        phases.add(result);
+    }
+
+    /**
+     * A phase that is being timed. Closing the phase records it.
+     */
+    public final class Phase implements AutoCloseable {
+        private final String name;
+        private final long startWallNanos;
+        private final long startCpuNanos;
+        private final long startAllocatedBytes;
+
+        private Phase(String name) {
+            this.name = name;
+            this.startWallNanos = enabled ? System.nanoTime() : 0;
+            this.startCpuNanos = enabled ? processCpuNanos() : 0;
+            this.startAllocatedBytes = enabled ? allocatedBytes() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (!enabled) {
+                return;
+            }
+
+            final long endCpuNanos = processCpuNanos();
+            final long endAllocatedBytes = allocatedBytes();
+            record(new PhaseResult(name,
+                    System.nanoTime() - startWallNanos,
+                    startCpuNanos < 0 || endCpuNanos < 0 ? -1 : endCpuNanos - startCpuNanos,
+                    startAllocatedBytes < 0 || endAllocatedBytes < 0 ? -1 : endAllocatedBytes - startAllocatedBytes));
+        }
+    }
+
+    private static class PhaseResult {
+        private final String name;
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        PhaseResult(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.name = name;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static long processCpuNanos() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspotThreads.isThreadAllocatedMemorySupported() || !hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        long total = 0;
+        for (final long allocated : hotspotThreads.getThreadAllocatedBytes(hotspotThreads.getAllThreadIds())) {
+            // threads that terminated since their id was read report -1
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
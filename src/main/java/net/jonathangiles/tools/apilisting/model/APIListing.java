@@ -13,7 +13,7 @@ public class APIListing {
     private String Name;
 
     @JsonProperty("Tokens")
-    private List<Token> tokens;
+    private TokenBuffer tokens;
 
     public APIListing() {
         this.childItems = new ArrayList<>();
@@ -39,11 +39,11 @@ public class APIListing {
         this.Name = Name;
     }
 
-    public List<Token> getTokens() {
+    public TokenBuffer getTokens() {
         return tokens;
     }
 
-    public void setTokens(List<Token> tokens) {
+    public void setTokens(TokenBuffer tokens) {
         this.tokens = tokens;
     }
 
@@ -2,61 +2,54 @@ package net.jonathangiles.tools.apilisting.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public class Token {
+/**
+ * A single token of a listing. Tokens are immutable, so the same instance can be shared wherever the same token
+ * appears - see {@link TokenBuffer#get(int)}.
+ */
+public final class Token {
     @JsonProperty("DefinitionId")
-    private String definitionId;
+    private final String definitionId;
 
     @JsonProperty("NavigateToId")
-    private String navigateToId;
+    private final String navigateToId;
 
     @JsonProperty("Kind")
-    private TokenKind kind;
+    private final TokenKind kind;
 
     @JsonProperty("Value")
-    private String value;
+    private final String value;
 
     public Token(final TokenKind kind, final String value) {
-        this(kind, value, null);
+        this(kind, value, null, null);
     }
 
     public Token(final TokenKind kind, final String value, final String definitionId) {
+        this(kind, value, definitionId, null);
+    }
+
+    public Token(final TokenKind kind, final String value, final String definitionId, final String navigateToId) {
         this.kind = kind;
         this.value = value;
         this.definitionId = definitionId;
+        this.navigateToId = navigateToId;
     }
 
     public String getDefinitionId() {
         return definitionId;
     }
 
-    public void setDefinitionId(String definitionId) {
-        this.definitionId = definitionId;
-    }
-
     public String getNavigateToId() {
         return navigateToId;
     }
 
-    public void setNavigateToId(String navigateToId) {
-        this.navigateToId = navigateToId;
-    }
-
     public TokenKind getKind() {
         return kind;
     }
 
-    public void setKind(TokenKind kind) {
-        this.kind = kind;
-    }
-
     public String getValue() {
         return value;
     }
 
-    public void setValue(String Value) {
-        this.value = Value;
-    }
-
     @Override
     public String toString()
     {
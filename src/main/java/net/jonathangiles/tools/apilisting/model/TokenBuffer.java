@@ -0,0 +1,275 @@
+package net.jonathangiles.tools.apilisting.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, append-only list of tokens. Rather than holding a {@link Token} object per token, the kind of each token is
+ * stored in a byte array, and its value, definition id and navigate-to id are stored as indexes into a table of unique
+ * strings. Listings repeat the same handful of strings (whitespace, punctuation, keywords and type names) over and
+ * over, so this is many times smaller than a list of tokens.
+ *
+ * <p>The buffer is serialized to the same JSON as a list of {@link Token} instances.</p>
+ */
+@JsonSerialize(using = TokenBuffer.Serializer.class)
+public class TokenBuffer implements Iterable<Token> {
+    private static final TokenKind[] KINDS = TokenKind.values();
+    private static final int NULL_STRING = -1;
+    private static final int DEFAULT_CAPACITY = 256;
+
+    // one entry per token
+    private byte[] kinds;
+    private int[] values;
+    private int[] definitionIds;
+    private int[] navigateToIds;
+    private int size;
+
+    // the string table that the token arrays index into
+    private String[] strings;
+    private int stringCount;
+    private final Map<String, Integer> stringIds;
+
+    // tokens handed out by get(int) that have a value but no ids, by the id of their value - as tokens are immutable,
+    // the whitespace, punctuation and keywords that make up most of a listing are each returned as one shared instance
+    private Token[] sharedTokens;
+
+    public TokenBuffer() {
+        this.kinds = new byte[DEFAULT_CAPACITY];
+        this.values = new int[DEFAULT_CAPACITY];
+        this.definitionIds = new int[DEFAULT_CAPACITY];
+        this.navigateToIds = new int[DEFAULT_CAPACITY];
+        this.strings = new String[DEFAULT_CAPACITY];
+        this.stringIds = new HashMap<>();
+    }
+
+    public void add(TokenKind kind, String value) {
+        add(kind, value, null, null);
+    }
+
+    public void add(TokenKind kind, String value, String definitionId) {
+        add(kind, value, definitionId, null);
+    }
+
+    public void add(TokenKind kind, String value, String definitionId, String navigateToId) {
+        addIds(kind.ordinal(), intern(value), intern(definitionId), intern(navigateToId));
+    }
+
+    public void add(Token token) {
+        add(token.getKind(), token.getValue(), token.getDefinitionId(), token.getNavigateToId());
+    }
+
+    /**
+     * Appends every token in the given buffer to the end of this buffer.
+     */
+    public void addAll(TokenBuffer other) {
+        // map each string id of the other buffer to a string id of this buffer, interning each string at most once
+        final int[] remap = new int[other.stringCount];
+        Arrays.fill(remap, NULL_STRING - 1);
+
+        for (int i = 0; i < other.size; i++) {
+            addIds(other.kinds[i],
+                    remap(other, remap, other.values[i]),
+                    remap(other, remap, other.definitionIds[i]),
+                    remap(other, remap, other.navigateToIds[i]));
+        }
+    }
+
+    /**
+     * Removes the most recently added token.
+     */
+    public void removeLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public TokenKind getKind(int index) {
+        checkIndex(index);
+        return KINDS[kinds[index]];
+    }
+
+    public String getValue(int index) {
+        checkIndex(index);
+        return string(values[index]);
+    }
+
+    public String getDefinitionId(int index) {
+        checkIndex(index);
+        return string(definitionIds[index]);
+    }
+
+    public String getNavigateToId(int index) {
+        checkIndex(index);
+        return string(navigateToIds[index]);
+    }
+
+    /**
+     * Returns a {@link Token} holding the token at the given index. Tokens with the same kind and value and no ids may
+     * be returned as the same instance.
+     */
+    public Token get(int index) {
+        checkIndex(index);
+        final TokenKind kind = KINDS[kinds[index]];
+        final int value = values[index];
+        if (value == NULL_STRING || definitionIds[index] != NULL_STRING || navigateToIds[index] != NULL_STRING) {
+            return new Token(kind, string(value), string(definitionIds[index]), string(navigateToIds[index]));
+        }
+
+        if (sharedTokens == null || sharedTokens.length < stringCount) {
+            sharedTokens = sharedTokens == null ? new Token[strings.length] : Arrays.copyOf(sharedTokens, strings.length);
+        }
+        Token token = sharedTokens[value];
+        if (token == null || token.getKind() != kind) {
+            token = new Token(kind, strings[value]);
+            sharedTokens[value] = token;
+        }
+        return token;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Writes each token as a JSON object to the given generator, without the enclosing array. This allows the tokens of
+     * many buffers to be written into a single JSON array.
+     */
+    public void writeElements(JsonGenerator gen) throws IOException {
+        for (int i = 0; i < size; i++) {
+            gen.writeStartObject();
+            gen.writeFieldName("DefinitionId");
+            Serializer.writeString(gen, string(definitionIds[i]));
+            gen.writeFieldName("NavigateToId");
+            Serializer.writeString(gen, string(navigateToIds[i]));
+            gen.writeNumberField("Kind", KINDS[kinds[i]].getId());
+            gen.writeFieldName("Value");
+            Serializer.writeString(gen, string(values[i]));
+            gen.writeEndObject();
+        }
+    }
+
+    private void addIds(int kind, int value, int definitionId, int navigateToId) {
+        if (size == kinds.length) {
+            final int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            definitionIds = Arrays.copyOf(definitionIds, capacity);
+            navigateToIds = Arrays.copyOf(navigateToIds, capacity);
+        }
+        kinds[size] = (byte) kind;
+        values[size] = value;
+        definitionIds[size] = definitionId;
+        navigateToIds[size] = navigateToId;
+        size++;
+    }
+
+    private int intern(String string) {
+        if (string == null) {
+            return NULL_STRING;
+        }
+
+        final Integer id = stringIds.get(string);
+        if (id != null) {
+            return id;
+        }
+
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount] = string;
+        stringIds.put(string, stringCount);
+        return stringCount++;
+    }
+
+    private int remap(TokenBuffer other, int[] remap, int otherId) {
+        if (otherId == NULL_STRING) {
+            return NULL_STRING;
+        }
+        if (remap[otherId] == NULL_STRING - 1) {
+            remap[otherId] = intern(other.strings[otherId]);
+        }
+        return remap[otherId];
+    }
+
+    private String string(int id) {
+        return id == NULL_STRING ? null : strings[id];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(get(i));
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Writes a token buffer in exactly the same shape as Jackson writes a list of {@link Token} instances.
+     */
+    static class Serializer extends StdSerializer<TokenBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(TokenBuffer.class);
+        }
+
+        @Override
+        public void serialize(TokenBuffer tokens, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(tokens.size);
+            tokens.writeElements(gen);
+            gen.writeEndArray();
+        }
+
+        private static void writeString(JsonGenerator gen, String value) throws IOException {
+            if (value == null) {
+                gen.writeNull();
+            } else {
+                gen.writeString(value);
+            }
+        }
+    }
+}
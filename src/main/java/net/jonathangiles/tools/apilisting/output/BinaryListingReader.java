@@ -0,0 +1,172 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.Tags;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.model.TokenKind;
+import net.jonathangiles.tools.apilisting.model.TypeKind;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.jonathangiles.tools.apilisting.output.BinaryListingWriter.*;
+
+/**
+ * Reads an API listing written by {@link BinaryListingWriter} back into the listing model, from which it can be written
+ * as JSON with {@link ListingWriter}.
+ */
+public final class BinaryListingReader {
+    private static final TypeKind[] TYPE_KINDS = TypeKind.values();
+
+    // the token kind of each kind id
+    private static final TokenKind[] TOKEN_KINDS = new TokenKind[KIND_MASK + 1];
+    static {
+        for (final TokenKind kind : TokenKind.values()) {
+            TOKEN_KINDS[kind.getId()] = kind;
+        }
+    }
+
+    private final byte[] bytes;
+    private int position;
+
+    private String[] strings;
+
+    private BinaryListingReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Reads the listing in the given file, which may be compressed, throwing an {@link IOException} if it is not a binary listing this version
+     * of the tool can read.
+     */
+    public static APIListing read(Path file) throws IOException {
+        return read(Compression.readAllBytes(file));
+    }
+
+    public static APIListing read(byte[] bytes) throws IOException {
+        try {
+            return new BinaryListingReader(bytes).readListing();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Binary listing is truncated or corrupt", e);
+        }
+    }
+
+    private APIListing readListing() throws IOException {
+        if (bytes.length < 4 || readInt() != MAGIC) {
+            throw new IOException("Not a binary listing");
+        }
+        final int version = readVarint();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary listing version " + version + ", expected " + FORMAT_VERSION);
+        }
+
+        strings = new String[readVarint()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString();
+        }
+
+        final APIListing listing = new APIListing();
+        listing.setName(readStringReference());
+        listing.setTokens(readTokens());
+        listing.setNavigation(readNavigation());
+
+        if (position != bytes.length) {
+            throw new IOException("Unexpected data after the end of the binary listing");
+        }
+        return listing;
+    }
+
+    private TokenBuffer readTokens() throws IOException {
+        final int count = readVarint();
+        if (count == 0) {
+            return null;
+        }
+
+        final TokenBuffer tokens = new TokenBuffer();
+        for (int i = 0; i < count - 1; i++) {
+            final int header = readVarint();
+            final TokenKind kind = TOKEN_KINDS[header & KIND_MASK];
+            if (kind == null) {
+                throw new IOException("Unknown token kind " + (header & KIND_MASK));
+            }
+
+            final String value = (header & HAS_VALUE) != 0 ? strings[readVarint()] : null;
+            final String definitionId = (header & HAS_DEFINITION_ID) != 0 ? strings[readVarint()] : null;
+            final String navigateToId = (header & HAS_NAVIGATE_TO_ID) != 0 ? strings[readVarint()] : null;
+            tokens.add(kind, value, definitionId, navigateToId);
+        }
+        return tokens;
+    }
+
+    private List<ChildItem> readNavigation() throws IOException {
+        final int count = readVarint();
+        if (count == 0) {
+            return null;
+        }
+
+        final List<ChildItem> navigation = new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+            final ChildItem childItem = new ChildItem(readStringReference(), readStringReference());
+
+            final int tags = readVarint();
+            if (tags == NO_TYPE_KIND) {
+                childItem.setTags(new Tags(null));
+            } else if (tags != NO_TAGS) {
+                if (tags - 2 >= TYPE_KINDS.length) {
+                    throw new IOException("Unknown type kind " + (tags - 2));
+                }
+                childItem.setTags(new Tags(TYPE_KINDS[tags - 2]));
+            }
+
+            childItem.setChildItems(readNavigation());
+            navigation.add(childItem);
+        }
+        return navigation;
+    }
+
+    private String readStringReference() {
+        final int reference = readVarint();
+        return reference == 0 ? null : strings[reference - 1];
+    }
+
+    private String readString() throws IOException {
+        final int encodedLength = readVarint();
+        final int end = position + encodedLength;
+        if (end < position || end > bytes.length) {
+            throw new IOException("Binary listing is truncated or corrupt");
+        }
+        final char[] chars = new char[end - position];
+        int length = 0;
+        while (position < end) {
+            final int b = bytes[position++] & 0xFF;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (bytes[position++] & 0x3F));
+            } else {
+                chars[length++] = (char) (((b & 0x0F) << 12) | ((bytes[position++] & 0x3F) << 6) | (bytes[position++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private int readInt() {
+        return ((bytes[position++] & 0xFF) << 24) | ((bytes[position++] & 0xFF) << 16)
+                | ((bytes[position++] & 0xFF) << 8) | (bytes[position++] & 0xFF);
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = bytes[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
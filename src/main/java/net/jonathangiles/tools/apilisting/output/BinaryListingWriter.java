@@ -0,0 +1,313 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.Tags;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes API listings in a compact binary form, which {@link BinaryListingReader} reads back. A listing is written as:
+ *
+ * <ul>
+ *     <li>a header - the four bytes of {@link #MAGIC}, followed by the format version as a varint</li>
+ *     <li>the string table - the number of strings, then each string as its length in bytes and its bytes. Every
+ *     string in the listing is stored here once, with the most used strings first so that they have the shortest
+ *     ids</li>
+ *     <li>the name, as a string reference</li>
+ *     <li>the tokens - the number of tokens, then each token as a byte holding its kind and which of its strings are
+ *     present, followed by the string id of each string that is present</li>
+ *     <li>the navigation - a list of child items, where each item is its navigation id and text as string references,
+ *     its tags, and its own list of child items</li>
+ * </ul>
+ *
+ * <p>All numbers are unsigned varints, seven bits to a byte with the high bit set on every byte but the last. A string
+ * reference is zero for null, and one more than the string id otherwise, as is the size of a list that may be null.
+ * Strings are encoded one UTF-16 character at a time in one to three bytes, like UTF-8 but with each half of a
+ * surrogate pair encoded separately, so that any Java string survives the round trip unchanged.</p>
+ */
+public final class BinaryListingWriter implements Closeable {
+    static final int MAGIC = 0x41504c42; // "APLB"
+    static final int FORMAT_VERSION = 1;
+
+    // a token is written as a byte with the kind id in the low four bits and these flags above it
+    static final int KIND_MASK = 0x0F;
+    static final int HAS_VALUE = 0x10;
+    static final int HAS_DEFINITION_ID = 0x20;
+    static final int HAS_NAVIGATE_TO_ID = 0x40;
+
+    // tags are written as zero for no tags, one for tags without a type kind, or two more than the type kind ordinal
+    static final int NO_TAGS = 0;
+    static final int NO_TYPE_KIND = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // the longest a varint of an int can be
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private final WritableByteChannel channel;
+
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position;
+
+    // the id of each string in the listing, once the string table is written
+    private Map<String, Integer> stringIds;
+
+    public BinaryListingWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Opens a writer that replaces the content of the given file.
+     */
+    public static BinaryListingWriter open(Path file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * Opens a writer that replaces the content of the given file, compressed with the given {@link Compression}, or
+     * uncompressed if it is null.
+     */
+    public static BinaryListingWriter open(Path file, String compression) throws IOException {
+        return new BinaryListingWriter(Compression.open(file, compression));
+    }
+
+    public void writeListing(APIListing listing) throws IOException {
+        writeInt(MAGIC);
+        writeVarint(FORMAT_VERSION);
+
+        writeStringTable(listing);
+
+        writeStringReference(listing.getName());
+
+        final TokenBuffer tokens = listing.getTokens();
+        if (tokens == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(tokens.size() + 1);
+            for (int i = 0; i < tokens.size(); i++) {
+                writeToken(tokens, i);
+            }
+        }
+
+        writeNavigation(listing.getNavigation());
+    }
+
+    private void writeStringTable(APIListing listing) throws IOException {
+        // count how often each string is used, so that the most used strings can be given the smallest ids
+        final StringCounter counter = new StringCounter();
+        counter.add(listing.getName());
+        final TokenBuffer tokens = listing.getTokens();
+        if (tokens != null) {
+            for (int i = 0; i < tokens.size(); i++) {
+                counter.add(tokens.getValue(i));
+                counter.add(tokens.getDefinitionId(i));
+                counter.add(tokens.getNavigateToId(i));
+            }
+        }
+        counter.addNavigation(listing.getNavigation());
+
+        final String[] strings = counter.sortedByCount();
+        stringIds = new HashMap<>(strings.length * 2);
+        writeVarint(strings.length);
+        for (int i = 0; i < strings.length; i++) {
+            stringIds.put(strings[i], i);
+            writeString(strings[i]);
+        }
+    }
+
+    private void writeToken(TokenBuffer tokens, int index) throws IOException {
+        final String value = tokens.getValue(index);
+        final String definitionId = tokens.getDefinitionId(index);
+        final String navigateToId = tokens.getNavigateToId(index);
+
+        int header = tokens.getKind(index).getId();
+        if (value != null) {
+            header |= HAS_VALUE;
+        }
+        if (definitionId != null) {
+            header |= HAS_DEFINITION_ID;
+        }
+        if (navigateToId != null) {
+            header |= HAS_NAVIGATE_TO_ID;
+        }
+        writeVarint(header);
+
+        if (value != null) {
+            writeVarint(stringIds.get(value));
+        }
+        if (definitionId != null) {
+            writeVarint(stringIds.get(definitionId));
+        }
+        if (navigateToId != null) {
+            writeVarint(stringIds.get(navigateToId));
+        }
+    }
+
+    private void writeNavigation(List<ChildItem> navigation) throws IOException {
+        if (navigation == null) {
+            writeVarint(0);
+            return;
+        }
+
+        writeVarint(navigation.size() + 1);
+        for (final ChildItem childItem : navigation) {
+            writeStringReference(childItem.getNavigationId());
+            writeStringReference(childItem.getText());
+
+            final Tags tags = childItem.getTags();
+            if (tags == null) {
+                writeVarint(NO_TAGS);
+            } else if (tags.getTypeKind() == null) {
+                writeVarint(NO_TYPE_KIND);
+            } else {
+                writeVarint(tags.getTypeKind().ordinal() + 2);
+            }
+
+            writeNavigation(childItem.getChildItem());
+        }
+    }
+
+    private void writeStringReference(String value) throws IOException {
+        writeVarint(value == null ? 0 : stringIds.get(value) + 1);
+    }
+
+    private void writeString(String value) throws IOException {
+        final int length = value.length();
+
+        int encodedLength = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            encodedLength += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        writeVarint(encodedLength);
+
+        for (int i = 0; i < length; i++) {
+            if (position + 3 > buffer.length) {
+                flushBuffer();
+            }
+
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        if (position + 4 > buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        if (position + MAX_VARINT_BYTES > buffer.length) {
+            flushBuffer();
+        }
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void flushBuffer() throws IOException {
+        byteBuffer.clear().limit(position);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Counts the uses of each distinct string in a listing.
+     */
+    private static final class StringCounter {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] strings = new String[256];
+        private int[] counts = new int[256];
+
+        void add(String value) {
+            if (value == null) {
+                return;
+            }
+
+            final Integer id = ids.get(value);
+            if (id != null) {
+                counts[id]++;
+                return;
+            }
+
+            final int newId = ids.size();
+            if (newId == strings.length) {
+                strings = Arrays.copyOf(strings, newId * 2);
+                counts = Arrays.copyOf(counts, newId * 2);
+            }
+            strings[newId] = value;
+            counts[newId] = 1;
+            ids.put(value, newId);
+        }
+
+        void addNavigation(List<ChildItem> navigation) {
+            if (navigation == null) {
+                return;
+            }
+            for (final ChildItem childItem : navigation) {
+                add(childItem.getNavigationId());
+                add(childItem.getText());
+                addNavigation(childItem.getChildItem());
+            }
+        }
+
+        /**
+         * The distinct strings, most used first. Strings used equally often keep the order they were first seen in, so
+         * the output only depends on the listing.
+         */
+        String[] sortedByCount() {
+            final int size = ids.size();
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+
+            final String[] sorted = new String[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = strings[order[i]];
+            }
+            return sorted;
+        }
+    }
+}
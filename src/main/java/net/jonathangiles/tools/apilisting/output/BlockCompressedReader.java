@@ -0,0 +1,174 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static net.jonathangiles.tools.apilisting.output.BlockCompressor.*;
+
+/**
+ * Reads a listing written with '--compress=blocks', either as a whole or one segment at a time. Only the index is read
+ * when the file is opened; each block is read and inflated on demand.
+ */
+public final class BlockCompressedReader implements Closeable {
+    private final FileChannel channel;
+
+    // the file offset, compressed size and uncompressed size of each block
+    private final long[] blockOffsets;
+    private final int[] compressedSizes;
+    private final int[] uncompressedSizes;
+
+    private final List<String> segmentNames;
+    private final int[] segmentBlocks;
+
+    private BlockCompressedReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        final long size = channel.size();
+        if (size < HEADER_SIZE + TRAILER_SIZE) {
+            throw new IOException("Not a block-compressed listing");
+        }
+        final ByteBuffer header = read(0, HEADER_SIZE);
+        final ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+        final long indexOffset = trailer.getLong();
+        if (header.getInt() != MAGIC || trailer.getInt() != MAGIC) {
+            throw new IOException("Not a block-compressed listing");
+        }
+        final int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported block-compressed listing version " + version + ", expected " + FORMAT_VERSION);
+        }
+        if (indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE) {
+            throw new IOException("Block-compressed listing is truncated or corrupt");
+        }
+
+        final ByteBuffer indexBuffer = read(indexOffset, (int) (size - TRAILER_SIZE - indexOffset));
+        final DataInputStream index = new DataInputStream(
+                new ByteArrayInputStream(indexBuffer.array(), 0, indexBuffer.limit()));
+
+        final int blockCount = index.readInt();
+        blockOffsets = new long[blockCount];
+        compressedSizes = new int[blockCount];
+        uncompressedSizes = new int[blockCount];
+        long offset = HEADER_SIZE;
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = offset;
+            compressedSizes[i] = index.readInt();
+            uncompressedSizes[i] = index.readInt();
+            offset += compressedSizes[i];
+        }
+        if (offset != indexOffset) {
+            throw new IOException("Block-compressed listing is truncated or corrupt");
+        }
+
+        final int segmentCount = index.readInt();
+        segmentNames = new ArrayList<>(segmentCount);
+        segmentBlocks = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segmentNames.add(index.readUTF());
+            segmentBlocks[i] = index.readInt();
+        }
+    }
+
+    public static BlockCompressedReader open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new BlockCompressedReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The names of the segments in the file, in the order they were written, without duplicates.
+     */
+    public Set<String> getSegmentNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(segmentNames));
+    }
+
+    /**
+     * Decompresses every segment with the given name, one after the other, or returns null if there is no such segment.
+     * A segment of a JSON listing is a fragment of the listing, rather than a JSON document of its own.
+     */
+    public byte[] readSegment(String name) throws IOException {
+        ByteArrayOutputStream out = null;
+        for (int i = 0; i < segmentNames.size(); i++) {
+            if (segmentNames.get(i).equals(name)) {
+                if (out == null) {
+                    out = new ByteArrayOutputStream();
+                }
+                final int end = i + 1 < segmentBlocks.length ? segmentBlocks[i + 1] : blockOffsets.length;
+                inflateBlocks(segmentBlocks[i], end, out);
+            }
+        }
+        return out == null ? null : out.toByteArray();
+    }
+
+    /**
+     * Decompresses the whole file.
+     */
+    public byte[] readAll() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        inflateBlocks(0, blockOffsets.length, out);
+        return out.toByteArray();
+    }
+
+    private void inflateBlocks(int start, int end, ByteArrayOutputStream out) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            for (int i = start; i < end; i++) {
+                final ByteBuffer compressed = read(blockOffsets[i], compressedSizes[i]);
+                final byte[] block = new byte[uncompressedSizes[i]];
+
+                inflater.reset();
+                inflater.setInput(compressed.array(), 0, compressed.limit());
+                int length = 0;
+                while (length < block.length && !inflater.finished()) {
+                    final int inflated = inflater.inflate(block, length, block.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != block.length) {
+                    throw new IOException("Block " + i + " of the block-compressed listing is corrupt");
+                }
+                out.write(block, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block-compressed listing is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Block-compressed listing is truncated or corrupt");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,150 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the output as a sequence of independently deflated blocks, followed by an index of the blocks and of the
+ * named segments they make up, so that {@link BlockCompressedReader} can decompress any one segment without reading
+ * the rest of the file. A file is laid out as:
+ *
+ * <ul>
+ *     <li>a header - the four bytes of {@link #MAGIC} and the format version as an int</li>
+ *     <li>the blocks - each holding up to {@link #BLOCK_SIZE} bytes of output, deflated without a zlib header</li>
+ *     <li>the index - the number of blocks, then the compressed and uncompressed size of each block as ints, then the
+ *     number of segments, then each segment as its name in modified UTF-8 and the index of its first block</li>
+ *     <li>a trailer - the file offset of the index as a long, and {@link #MAGIC} again</li>
+ * </ul>
+ *
+ * <p>A segment always starts a new block, and runs until the first block of the next segment. Output written before
+ * the first segment starts is not part of any segment.</p>
+ */
+final class BlockCompressor implements CompressingChannel.Compressor {
+    static final int MAGIC = 0x41504c5a; // "APLZ"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 12;
+
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private final WritableByteChannel channel;
+    private final Deflater deflater;
+
+    // the uncompressed output of the current block, and the buffer it is deflated into
+    private final byte[] block;
+    private int blockLength;
+    private byte[] compressed;
+
+    private long offset;
+    private final List<int[]> blockSizes;
+    private final List<String> segmentNames;
+    private final List<Integer> segmentBlocks;
+
+    BlockCompressor(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.block = new byte[BLOCK_SIZE];
+        this.compressed = new byte[BLOCK_SIZE];
+        this.blockSizes = new ArrayList<>();
+        this.segmentNames = new ArrayList<>();
+        this.segmentBlocks = new ArrayList<>();
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        writeFully(header);
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        int position = 0;
+        while (position < bytes.length) {
+            final int length = Math.min(bytes.length - position, block.length - blockLength);
+            System.arraycopy(bytes, position, block, blockLength, length);
+            blockLength += length;
+            position += length;
+
+            if (blockLength == block.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void startSegment(String name) throws IOException {
+        writeBlock();
+        segmentNames.add(name);
+        segmentBlocks.add(blockSizes.size());
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            writeBlock();
+
+            final ByteArrayOutputStream index = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(index);
+            out.writeInt(blockSizes.size());
+            for (final int[] sizes : blockSizes) {
+                out.writeInt(sizes[0]);
+                out.writeInt(sizes[1]);
+            }
+            out.writeInt(segmentNames.size());
+            for (int i = 0; i < segmentNames.size(); i++) {
+                out.writeUTF(segmentNames.get(i));
+                out.writeInt(segmentBlocks.get(i));
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            writeFully(ByteBuffer.wrap(index.toByteArray()));
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    @Override
+    public void abort() {
+        deflater.end();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the failure that led here is the one reported
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                // incompressible blocks can come out slightly larger than they went in
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        writeFully(ByteBuffer.wrap(compressed, 0, compressedLength));
+        blockSizes.add(new int[] { compressedLength, blockLength });
+        blockLength = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        offset += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A channel that compresses what is written to it on a thread of its own, so that compression overlaps with whatever
+ * the writing thread does in between writes - analysis, when the listing is streamed. Each write is copied and queued
+ * for the compressor thread; once a few writes are queued, writers wait for the compressor to catch up rather than
+ * holding any more of the listing in memory.
+ *
+ * <p>A failure on the compressor thread is thrown from the next write, or from {@link #close()}.</p>
+ */
+public final class CompressingChannel implements WritableByteChannel {
+    private static final int QUEUE_CAPACITY = 8;
+
+    // queued in place of a chunk of bytes to end the output
+    private static final Object END = new Object();
+
+    // queued in place of a chunk of bytes to end the output without completing it
+    private static final Object ABORT = new Object();
+
+    /**
+     * Compresses the bytes written to a {@link CompressingChannel}. Every method is called on the compressor thread.
+     */
+    interface Compressor {
+        void write(byte[] bytes) throws IOException;
+
+        /**
+         * Starts a segment that can be read back on its own, if the compressed form supports it.
+         */
+        void startSegment(String name) throws IOException;
+
+        /**
+         * Writes the end of the compressed form and closes the output.
+         */
+        void finish() throws IOException;
+
+        /**
+         * Closes the output after a failure, without completing it.
+         */
+        void abort();
+    }
+
+    private static final class SegmentStart {
+        private final String name;
+
+        SegmentStart(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Compressor compressor;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+
+    private volatile Throwable failure;
+    private boolean open;
+
+    CompressingChannel(Compressor compressor) {
+        this.compressor = compressor;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.thread = new Thread(this::compress, "listing-compressor");
+        this.thread.setDaemon(true);
+        this.open = true;
+        this.thread.start();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        final byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        enqueue(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Starts a segment of the output with the given name, which is recorded in the index of the block-compressed
+     * form and ignored otherwise. Everything written from now until the next segment starts belongs to this segment.
+     */
+    public void startSegment(String name) throws IOException {
+        ensureOpen();
+        enqueue(new SegmentStart(name));
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Waits for everything written so far to be compressed and completes the compressed output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        // the end is queued even after a failure, as that is what lets the compressor thread finish
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression to complete", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Closes the channel without completing the compressed output, as when the listing failed to be written. What was
+     * written so far is dropped, and a failure on the compressor thread is not reported.
+     */
+    public void abort() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        try {
+            queue.put(ABORT);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression to stop", e);
+        }
+    }
+
+    private void compress() {
+        boolean ended = false;
+        try {
+            Object item;
+            while ((item = queue.take()) != END) {
+                if (item == ABORT) {
+                    compressor.abort();
+                    return;
+                } else if (item instanceof SegmentStart) {
+                    compressor.startSegment(((SegmentStart) item).name);
+                } else {
+                    compressor.write((byte[]) item);
+                }
+            }
+            ended = true;
+            compressor.finish();
+        } catch (Throwable e) {
+            failure = e;
+            compressor.abort();
+
+            // keep taking from the queue until the end so that the writing thread never waits on a full queue, and
+            // learns of the failure from its next write instead
+            try {
+                while (!ended) {
+                    final Object item = queue.take();
+                    ended = item == END || item == ABORT;
+                }
+            } catch (InterruptedException ignored) {
+                // nothing waits on this thread but close, which reports the failure
+            }
+        }
+    }
+
+    private void enqueue(Object item) throws IOException {
+        checkFailure();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression to catch up", e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        final Throwable failure = this.failure;
+        if (failure != null) {
+            throw new IOException("Compressing the listing failed", failure);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens output files with the compression chosen on the command line, and reads them back whatever their compression.
+ */
+public final class Compression {
+    public static final String GZIP = "gzip";
+    public static final String BLOCKS = "blocks";
+
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private Compression() {
+        // static helpers only
+    }
+
+    /**
+     * Opens a channel that replaces the content of the given file, compressing what is written to it on a separate
+     * thread unless the compression is null.
+     */
+    public static WritableByteChannel open(Path file, String compression) throws IOException {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (compression == null) {
+            return channel;
+        }
+
+        try {
+            switch (compression) {
+                case GZIP:
+                    return new CompressingChannel(new GzipCompressor(channel));
+                case BLOCKS:
+                    return new CompressingChannel(new BlockCompressor(channel));
+                default:
+                    throw new IllegalArgumentException("Unknown compression '" + compression + "'");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the whole of the given file, decompressing it if it was written with any compression.
+     */
+    public static byte[] readAllBytes(Path file) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is full or the file ends
+            }
+        }
+        header.flip();
+
+        if (header.remaining() == 4 && header.getInt(0) == BlockCompressor.MAGIC) {
+            try (BlockCompressedReader reader = BlockCompressedReader.open(file)) {
+                return reader.readAll();
+            }
+        }
+        if (header.remaining() >= 2 && (header.getShort(0) & 0xFFFF) == GZIP_MAGIC) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                return readFully(in);
+            }
+        }
+        return Files.readAllBytes(file);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the output to a single gzip stream. Segments are not recorded, as gzip can only be read from the start.
+ */
+final class GzipCompressor implements CompressingChannel.Compressor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final GZIPOutputStream out;
+
+    GzipCompressor(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        final OutputStream channelStream = Channels.newOutputStream(channel);
+        this.out = new GZIPOutputStream(channelStream, BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+    }
+
+    @Override
+    public void startSegment(String name) {
+        // nothing to do
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.close();
+    }
+
+    @Override
+    public void abort() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the failure that led here is the one reported
+        }
+    }
+}
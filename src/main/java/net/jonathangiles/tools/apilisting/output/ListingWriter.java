@@ -0,0 +1,403 @@
+package net.jonathangiles.tools.apilisting.output;
+
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.Tags;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.model.TokenKind;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes API listings as JSON without going through Jackson. The listing schema is fixed, so every field name and
+ * constant is encoded to UTF-8 once, up front, and strings are encoded straight into an output buffer that is written
+ * to a channel whenever it fills up - nothing is allocated per token.
+ *
+ * <p>The pretty output is byte-for-byte the same as Jackson's default pretty printer produces for the listing model,
+ * and the compact output is the same as Jackson produces without a pretty printer.</p>
+ */
+public final class ListingWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // the longest a single character can become once written: a six byte unicode escape
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    // for each ASCII character, 0 if it is written as-is, the character to write after a backslash, or -1 if it is
+    // written as a unicode escape - the same characters that Jackson escapes
+    private static final int[] ESCAPES = new int[128];
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = -1;
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+    }
+
+    // the JSON value of each token kind, by ordinal
+    private static final byte[][] TOKEN_KINDS;
+    static {
+        final TokenKind[] kinds = TokenKind.values();
+        TOKEN_KINDS = new byte[kinds.length][];
+        for (final TokenKind kind : kinds) {
+            TOKEN_KINDS[kind.ordinal()] = ascii(Integer.toString(kind.getId()));
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean pretty;
+
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position;
+
+    // the depth of object nesting, which is what pretty output is indented by
+    private int depth;
+    private byte[] indentation;
+
+    // field names, followed by the separator before their value
+    private final byte[] navigationField;
+    private final byte[] nameField;
+    private final byte[] tokensField;
+    private final byte[] definitionIdField;
+    private final byte[] navigateToIdField;
+    private final byte[] kindField;
+    private final byte[] valueField;
+    private final byte[] childItemsField;
+    private final byte[] navigationIdField;
+    private final byte[] textField;
+    private final byte[] tagsField;
+    private final byte[] typeKindField;
+
+    // whether no token has been written yet when tokens are written in several calls
+    private boolean firstToken;
+
+    public ListingWriter(WritableByteChannel channel, boolean pretty) {
+        this.channel = channel;
+        this.pretty = pretty;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+        this.indentation = makeIndentation(16);
+
+        this.navigationField = field("Navigation");
+        this.nameField = field("Name");
+        this.tokensField = field("Tokens");
+        this.definitionIdField = field("DefinitionId");
+        this.navigateToIdField = field("NavigateToId");
+        this.kindField = field("Kind");
+        this.valueField = field("Value");
+        this.childItemsField = field("ChildItems");
+        this.navigationIdField = field("NavigationId");
+        this.textField = field("Text");
+        this.tagsField = field("Tags");
+        this.typeKindField = field("TypeKind");
+    }
+
+    /**
+     * Opens a writer that replaces the content of the given file.
+     */
+    public static ListingWriter open(Path file, boolean pretty) throws IOException {
+        return open(file, pretty, null);
+    }
+
+    /**
+     * Opens a writer that replaces the content of the given file, compressed with the given {@link Compression}, or
+     * uncompressed if it is null.
+     */
+    public static ListingWriter open(Path file, boolean pretty, String compression) throws IOException {
+        return new ListingWriter(Compression.open(file, compression), pretty);
+    }
+
+    /**
+     * Writes a complete listing, with its fields in the same order as Jackson writes them.
+     */
+    public void writeListing(APIListing listing) throws IOException {
+        startObject();
+        writeField(true, navigationField);
+        writeNavigation(listing.getNavigation());
+        writeField(false, nameField);
+        writeString(listing.getName());
+        writeField(false, tokensField);
+        if (listing.getTokens() == null) {
+            writeBytes(NULL);
+        } else {
+            startArray();
+            firstToken = true;
+            writeTokens(listing.getTokens());
+            endArray();
+        }
+        endObject(true);
+    }
+
+    /**
+     * Starts a listing whose tokens are written by one or more calls to {@link #writeTokens(TokenBuffer)}, followed by
+     * a call to {@link #endStreamedListing(List)}. The name and tokens are written before the navigation.
+     */
+    public void startStreamedListing(String name) throws IOException {
+        startObject();
+        writeField(true, nameField);
+        writeString(name);
+        writeField(false, tokensField);
+        startArray();
+        firstToken = true;
+    }
+
+    /**
+     * Writes each token in the buffer as an element of the tokens array.
+     */
+    public void writeTokens(TokenBuffer tokens) throws IOException {
+        for (int i = 0; i < tokens.size(); i++) {
+            writeArrayElement(firstToken);
+            firstToken = false;
+
+            startObject();
+            writeField(true, definitionIdField);
+            writeString(tokens.getDefinitionId(i));
+            writeField(false, navigateToIdField);
+            writeString(tokens.getNavigateToId(i));
+            writeField(false, kindField);
+            writeBytes(TOKEN_KINDS[tokens.getKind(i).ordinal()]);
+            writeField(false, valueField);
+            writeString(tokens.getValue(i));
+            endObject(true);
+        }
+    }
+
+    /**
+     * Starts a new segment of the output, if the output is block-compressed, so that what follows can be read back on
+     * its own. See {@link BlockCompressedReader}.
+     */
+    public void startSegment(String name) throws IOException {
+        if (channel instanceof CompressingChannel) {
+            flushBuffer();
+            ((CompressingChannel) channel).startSegment(name);
+        }
+    }
+
+    public void endStreamedListing(List<ChildItem> navigation) throws IOException {
+        endArray();
+        writeField(false, navigationField);
+        writeNavigation(navigation);
+        endObject(true);
+    }
+
+    private void writeNavigation(List<ChildItem> navigation) throws IOException {
+        if (navigation == null) {
+            writeBytes(NULL);
+            return;
+        }
+
+        startArray();
+        for (int i = 0; i < navigation.size(); i++) {
+            writeArrayElement(i == 0);
+            writeChildItem(navigation.get(i));
+        }
+        endArray();
+    }
+
+    private void writeChildItem(ChildItem childItem) throws IOException {
+        startObject();
+        writeField(true, childItemsField);
+        writeNavigation(childItem.getChildItem());
+        writeField(false, navigationIdField);
+        writeString(childItem.getNavigationId());
+        writeField(false, textField);
+        writeString(childItem.getText());
+        writeField(false, tagsField);
+
+        final Tags tags = childItem.getTags();
+        if (tags == null) {
+            writeBytes(NULL);
+        } else {
+            startObject();
+            writeField(true, typeKindField);
+            writeString(tags.getTypeKind() == null ? null : tags.getTypeKind().getName());
+            endObject(true);
+        }
+        endObject(true);
+    }
+
+    private void startObject() throws IOException {
+        writeByte('{');
+        depth++;
+    }
+
+    private void endObject(boolean hasFields) throws IOException {
+        depth--;
+        if (pretty) {
+            if (hasFields) {
+                writeIndentation();
+            } else {
+                writeByte(' ');
+            }
+        }
+        writeByte('}');
+    }
+
+    // arrays are not indented - their elements follow each other on the same line, as Jackson does
+    private void startArray() throws IOException {
+        writeByte('[');
+    }
+
+    private void writeArrayElement(boolean first) throws IOException {
+        if (!first) {
+            writeByte(',');
+        }
+        if (pretty) {
+            writeByte(' ');
+        }
+    }
+
+    private void endArray() throws IOException {
+        if (pretty) {
+            writeByte(' ');
+        }
+        writeByte(']');
+    }
+
+    private void writeField(boolean first, byte[] field) throws IOException {
+        if (!first) {
+            writeByte(',');
+        }
+        if (pretty) {
+            writeIndentation();
+        }
+        writeBytes(field);
+    }
+
+    private void writeIndentation() throws IOException {
+        final int length = 1 + depth * 2;
+        if (length > indentation.length) {
+            indentation = makeIndentation(depth * 2);
+        }
+        writeBytes(indentation, length);
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeBytes(NULL);
+            return;
+        }
+
+        writeByte('"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (position + MAX_CHAR_BYTES > buffer.length) {
+                flushBuffer();
+            }
+
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                final int escape = ESCAPES[c];
+                if (escape == 0) {
+                    buffer[position++] = (byte) c;
+                } else if (escape > 0) {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) escape;
+                } else {
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'u';
+                    buffer[position++] = '0';
+                    buffer[position++] = '0';
+                    buffer[position++] = HEX[c >> 4];
+                    buffer[position++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // characters outside the basic multilingual plane are written as a pair of escaped surrogates, as
+                // Jackson does
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = HEX[c >> 12];
+                buffer[position++] = HEX[(c >> 8) & 0xF];
+                buffer[position++] = HEX[(c >> 4) & 0xF];
+                buffer[position++] = HEX[c & 0xF];
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeByte(char b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, 0, buffer, position, length);
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        byteBuffer.clear().limit(position);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the output without writing what is still buffered, or completing the compressed form, as when the
+     * listing failed to be written and is to be discarded.
+     */
+    public void abort() throws IOException {
+        if (channel instanceof CompressingChannel) {
+            ((CompressingChannel) channel).abort();
+        } else {
+            channel.close();
+        }
+    }
+
+    private byte[] field(String name) {
+        return ascii("\"" + name + "\"" + (pretty ? " : " : ":"));
+    }
+
+    private static byte[] makeIndentation(int spaces) {
+        final byte[] indentation = new byte[1 + spaces];
+        indentation[0] = '\n';
+        for (int i = 1; i < indentation.length; i++) {
+            indentation[i] = ' ';
+        }
+        return indentation;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,64 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+
+import java.io.IOException;
+
+/**
+ * Counts the tokens, sources and navigation items that pass through it, before handing them on to another sink.
+ */
+public class CountingSink implements ListingSink {
+    private final ListingSink delegate;
+
+    private long tokenCount;
+    private long sourceCount;
+    private long navigationCount;
+
+    public CountingSink(ListingSink delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void acceptTokens(String source, TokenBuffer tokens) throws IOException {
+        tokenCount += tokens.size();
+        sourceCount++;
+        delegate.acceptTokens(source, tokens);
+    }
+
+    @Override
+    public void acceptNavigation(ChildItem navigation) throws IOException {
+        navigationCount += countNavigation(navigation);
+        delegate.acceptNavigation(navigation);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public void abort() throws IOException {
+        delegate.abort();
+    }
+
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    public long getSourceCount() {
+        return sourceCount;
+    }
+
+    public long getNavigationCount() {
+        return navigationCount;
+    }
+
+    private static long countNavigation(ChildItem navigation) {
+        long count = 1;
+        for (final ChildItem child : navigation.getChildItem()) {
+            count += countNavigation(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,35 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import net.jonathangiles.tools.apilisting.model.APIListing;
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+
+/**
+ * Collects the tokens and navigation into an {@link APIListing}.
+ */
+public class InMemorySink implements ListingSink {
+    private final APIListing apiListing;
+
+    public InMemorySink(APIListing apiListing) {
+        this.apiListing = apiListing;
+    }
+
+    @Override
+    public void acceptTokens(String source, TokenBuffer tokens) {
+        apiListing.getTokens().addAll(tokens);
+    }
+
+    @Override
+    public void acceptNavigation(ChildItem navigation) {
+        apiListing.addChildItem(navigation);
+    }
+
+    @Override
+    public void close() {
+        // nothing to do - the listing is complete
+    }
+
+    public APIListing getApiListing() {
+        return apiListing;
+    }
+}
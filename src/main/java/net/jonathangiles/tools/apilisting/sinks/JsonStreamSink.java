@@ -0,0 +1,87 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+import net.jonathangiles.tools.apilisting.output.ListingWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes an API listing to a JSON file incrementally, so that the tokens never need to be held in memory all at once.
+ * The listing is written with the same field names as {@link net.jonathangiles.tools.apilisting.model.APIListing},
+ * except that the navigation is written after the tokens, when the sink is closed, as it is only complete once analysis
+ * has finished.
+ *
+ * <p>When the output is block-compressed, the tokens of each package start a new segment named after the package, and
+ * the navigation is written to a segment of its own, so that each can be read back without the rest of the listing.</p>
+ */
+public class JsonStreamSink implements ListingSink {
+    // the segment the navigation is written to, which cannot be mistaken for a package name
+    public static final String NAVIGATION_SEGMENT = "(navigation)";
+
+    private final File outputFile;
+    private final ListingWriter writer;
+    private final List<ChildItem> navigation;
+    private String currentPackage;
+    private boolean closed;
+
+    public JsonStreamSink(File outputFile, String reviewName, boolean pretty, String compression) throws IOException {
+        this.outputFile = outputFile;
+        this.writer = ListingWriter.open(outputFile.toPath(), pretty, compression);
+        this.navigation = new ArrayList<>();
+        writer.startStreamedListing(reviewName);
+    }
+
+    @Override
+    public void acceptTokens(String source, TokenBuffer tokens) throws IOException {
+        final int slash = source.lastIndexOf('/');
+        final String packageName = slash == -1 ? "" : source.substring(0, slash).replace('/', '.');
+        if (!packageName.equals(currentPackage)) {
+            currentPackage = packageName;
+            writer.startSegment(packageName);
+        }
+        writer.writeTokens(tokens);
+    }
+
+    @Override
+    public void acceptNavigation(ChildItem navigation) {
+        // the navigation is small compared to the tokens, so we hold on to it until the tokens are complete
+        this.navigation.add(navigation);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            writer.startSegment(NAVIGATION_SEGMENT);
+            writer.endStreamedListing(navigation);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Closes the output file without writing the navigation or the end of the listing, and deletes it.
+     */
+    @Override
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            writer.abort();
+        } finally {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sink that receives both the tokens and navigation of an API listing. Closing the sink completes the listing, and
+ * closing it more than once has no further effect.
+ */
+public interface ListingSink extends TokenSink, NavigationSink, Closeable {
+    /**
+     * Discards the listing after a failure, so that no incomplete listing is left behind looking like a complete
+     * one. Closing the sink afterwards has no effect. Sinks that write nothing out do nothing, which is the default.
+     */
+    default void abort() throws IOException {
+        // no-op
+    }
+}
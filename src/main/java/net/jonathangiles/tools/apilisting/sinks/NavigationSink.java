@@ -0,0 +1,14 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import net.jonathangiles.tools.apilisting.model.ChildItem;
+
+import java.io.IOException;
+
+/**
+ * Receives the top-level navigation items of an API listing, in order, once each item and all of its children are
+ * complete.
+ */
+public interface NavigationSink {
+
+    void acceptNavigation(ChildItem navigation) throws IOException;
+}
@@ -0,0 +1,22 @@
+package net.jonathangiles.tools.apilisting.sinks;
+
+import net.jonathangiles.tools.apilisting.model.TokenBuffer;
+
+import java.io.IOException;
+
+/**
+ * Receives the tokens of an API listing as an analyser produces them. Tokens arrive in batches, in the order they
+ * appear in the listing, and each batch is labelled with the source it was produced from.
+ */
+public interface TokenSink {
+
+    /**
+     * Accepts the next batch of tokens of the listing.
+     *
+     * @param source the path within the input jar file that the tokens were produced from, e.g.
+     *      'com/azure/core/http/HttpClient.java'.
+     * @param tokens the tokens, which the sink must not hold on to beyond this call unless it copies them, as the
+     *      caller is free to reuse the buffer.
+     */
+    void acceptTokens(String source, TokenBuffer tokens) throws IOException;
+}